@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Встроенная H2 со схемой из миграций Flyway и хранилищами поверх нее. Данные генерируются с фиксированным
+ * зерном, поэтому при одинаковых размерах набора прогоны сравнимы между собой.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    static final long SEED = 20240411L;
+    private static final int BATCH_SIZE = 5000;
+    private static final int GENRES_COUNT = 6;
+    private static final int RATINGS_COUNT = 5;
+
+    final HikariDataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final DataSourceTransactionManager transactionManager;
+    final ReferenceDataRegistry referenceDataRegistry;
+    final FilmDbStorage filmDbStorage;
+    final UserDbStorage userDbStorage;
+    private final SplittableRandom random = new SplittableRandom(SEED);
+
+    BenchmarkDatabase() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";mode=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        filmDbStorage = new FilmDbStorage(jdbcTemplate, referenceDataRegistry, transactionManager);
+        userDbStorage = new UserDbStorage(jdbcTemplate, transactionManager);
+    }
+
+    List<Integer> addUsers(final int count) {
+        List<Integer> userIds = new ArrayList<>(count);
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            List<User> users = new ArrayList<>();
+            for (int i = from; i < Math.min(from + BATCH_SIZE, count); i++) {
+                users.add(makeUser(i));
+            }
+            userIds.addAll(userDbStorage.addUsers(users));
+        }
+        return userIds;
+    }
+
+    List<Integer> addFilms(final int count) {
+        List<Integer> filmIds = new ArrayList<>(count);
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            List<Film> films = new ArrayList<>();
+            for (int i = from; i < Math.min(from + BATCH_SIZE, count); i++) {
+                films.add(makeFilm(i));
+            }
+            filmIds.addAll(filmDbStorage.addFilms(films));
+        }
+        return filmIds;
+    }
+
+    /**
+     * Лайки распределены неравномерно: чем меньше номер фильма в списке, тем чаще его лайкают.
+     * Повторные пары пропускаются хранилищем, поэтому лайков в базе может оказаться немного меньше count.
+     */
+    void addLikes(final List<Integer> userIds, final List<Integer> filmIds, final int count) {
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            List<FilmLike> likes = new ArrayList<>();
+            for (int i = from; i < Math.min(from + BATCH_SIZE, count); i++) {
+                int filmIndex = (int) (filmIds.size() * Math.pow(random.nextDouble(), 3));
+                likes.add(new FilmLike(filmIds.get(filmIndex), userIds.get(random.nextInt(userIds.size()))));
+            }
+            filmDbStorage.addLikes(likes);
+        }
+    }
+
+    /**
+     * Взаимная дружба по модели предпочтительного присоединения: каждый следующий пользователь дружит
+     * с friendsPerUser уже добавленными, выбранными пропорционально числу их друзей. Степени вершин
+     * получаются распределенными по степенному закону, как в реальных социальных графах.
+     */
+    void addFriendships(final List<Integer> userIds, final int friendsPerUser) {
+        List<Integer> edgeEnds = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Integer userId = userIds.get(i);
+            Set<Integer> friendIds = new HashSet<>();
+            while (i > 0 && friendIds.size() < Math.min(friendsPerUser, i)) {
+                friendIds.add(edgeEnds.isEmpty() || random.nextInt(4) == 0
+                        ? userIds.get(random.nextInt(i))
+                        : edgeEnds.get(random.nextInt(edgeEnds.size())));
+            }
+            for (Integer friendId : friendIds) {
+                rows.add(new Object[]{userId, friendId});
+                rows.add(new Object[]{friendId, userId});
+                edgeEnds.add(userId);
+                edgeEnds.add(friendId);
+            }
+            if (rows.size() >= BATCH_SIZE || i == userIds.size() - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, TRUE)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    Film makeFilm(final int number) {
+        Set<FilmGenre> genres = new HashSet<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            genres.add(new FilmGenre(1 + random.nextInt(GENRES_COUNT)));
+        }
+        return new Film(null, "Film " + number, "Benchmark film " + number,
+                LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25000)), 60 + random.nextInt(120),
+                new FilmRating(1 + random.nextInt(RATINGS_COUNT)), genres, new HashSet<>());
+    }
+
+    private User makeUser(final int number) {
+        String login = "bench" + number;
+        return new User(null, login + "@mail.test", login, "User " + number,
+                LocalDate.of(1960, 1, 1).plusDays(random.nextInt(15000)), new HashSet<>(), new HashSet<>());
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.service.FilmLocks;
+import ru.yandex.practicum.filmorate.service.FilmRecommender;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.WriteBehindFilmStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Горячие пути FilmService и FilmDbStorage на встроенной H2. Размер набора задается параметрами, например
+ * -p likes=10000,100000,1000000 для сравнения топа фильмов на разном количестве лайков.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmServiceBenchmark {
+
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    @Param("2000")
+    public int users;
+    @Param("5000")
+    public int films;
+    @Param("100000")
+    public int likes;
+    @Param("false")
+    public boolean writeBehind;
+
+    private BenchmarkDatabase database;
+    private WriteBehindFilmStorage writeBehindFilmStorage;
+    private FilmService filmService;
+    private Path journalDir;
+    private List<Integer> userIds;
+    private List<Integer> filmIds;
+    private SplittableRandom random;
+    private int importedFilms;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        database = new BenchmarkDatabase();
+        userIds = database.addUsers(users);
+        filmIds = database.addFilms(films);
+        database.addLikes(userIds, filmIds, likes);
+
+        journalDir = Files.createTempDirectory("filmorate-journal");
+        writeBehindFilmStorage = new WriteBehindFilmStorage(database.filmDbStorage, database.userDbStorage,
+                writeBehind, journalDir.toString(), 200);
+        writeBehindFilmStorage.start();
+        FilmLocks filmLocks = new FilmLocks();
+        FilmLeaderboard filmLeaderboard = new FilmLeaderboard(writeBehindFilmStorage, filmLocks);
+        filmLeaderboard.rebuild();
+        FilmRecommender filmRecommender = new FilmRecommender(writeBehindFilmStorage, filmLocks);
+        filmRecommender.rebuild();
+        FilmSimilarityIndex filmSimilarityIndex = new FilmSimilarityIndex(writeBehindFilmStorage, filmLocks);
+        filmSimilarityIndex.rebuild();
+        filmService = new FilmService(new CachingFilmStorage(writeBehindFilmStorage, 10000),
+                database.userDbStorage, filmLeaderboard, filmRecommender, filmSimilarityIndex, filmLocks);
+        random = new SplittableRandom(BenchmarkDatabase.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException, InterruptedException {
+        writeBehindFilmStorage.stop();
+        database.close();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            files.sorted((first, second) -> second.compareTo(first)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilmsByLikes() {
+        return filmService.getPopularFilmsByLikes(10);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilmsFromDb() {
+        return database.filmDbStorage.getPopularFilms(10);
+    }
+
+    /**
+     * Случайная пара пользователь-фильм: на наборе по умолчанию повторы почти не встречаются,
+     * так что измеряется запись нового лайка, а с -p writeBehind=true - запись в журнал.
+     */
+    @Benchmark
+    public int addLike() {
+        return filmService.addLike(filmIds.get(random.nextInt(filmIds.size())),
+                userIds.get(random.nextInt(userIds.size())));
+    }
+
+    @Benchmark
+    public List<Film> getAllFilms() {
+        return database.filmDbStorage.getAllFilms();
+    }
+
+    /**
+     * Пакетный импорт {@link #IMPORT_BATCH_SIZE} фильмов за операцию: фильмов в секунду = 10^9 / время операции в мкс.
+     */
+    @Benchmark
+    public List<Integer> addFilmsBatch() {
+        List<Film> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        for (int i = 0; i < IMPORT_BATCH_SIZE; i++) {
+            batch.add(database.makeFilm(films + importedFilms++));
+        }
+        return filmService.addFilms(batch);
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.service.FilmLocks;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Похожие фильмы по MinHash против точного перебора по коэффициенту Жаккара. Полнота MinHash попадает
+ * в результаты счетчиками found/expected и равна found / expected. Найденный фильм считается верным, если он
+ * не менее похож, чем последний фильм точного топа: при равном сходстве перебор упорядочивает фильмы по ID,
+ * а MinHash - нет.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmSimilarityBenchmark {
+
+    private static final int LIMIT = 10;
+    private static final int QUERIES_COUNT = 200;
+
+    @Param("2000")
+    public int users;
+    @Param("5000")
+    public int films;
+    @Param("100000")
+    public int likes;
+
+    private FilmSimilarityIndex filmSimilarityIndex;
+    private final Map<Integer, int[]> featuresByFilm = new HashMap<>();
+    private final Map<Integer, Integer> expectedCounts = new HashMap<>();
+    private final Map<Integer, Set<Integer>> relevantFilms = new HashMap<>();
+    private final List<Integer> queryFilmIds = new ArrayList<>();
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        try (BenchmarkDatabase database = new BenchmarkDatabase()) {
+            List<Integer> userIds = database.addUsers(users);
+            List<Integer> filmIds = database.addFilms(films);
+            database.addLikes(userIds, filmIds, likes);
+            filmSimilarityIndex = new FilmSimilarityIndex(database.filmDbStorage, new FilmLocks());
+            filmSimilarityIndex.rebuild();
+            database.filmDbStorage.exportFilms(film -> {
+                SortedIntSet features = new SortedIntSet(film.getUsersLikes());
+                for (FilmGenre genre : film.getGenres()) {
+                    features.addInt(-genre.getId());
+                }
+                featuresByFilm.put(film.getId(), features.toIntArray());
+            });
+        }
+
+        List<Integer> filmIds = new ArrayList<>(featuresByFilm.keySet());
+        Collections.sort(filmIds);
+        Collections.shuffle(filmIds, new Random(BenchmarkDatabase.SEED));
+        for (Integer filmId : filmIds.subList(0, Math.min(QUERIES_COUNT, filmIds.size()))) {
+            List<Integer> exactSimilarFilmIds = getExactSimilarFilmIds(filmId);
+            queryFilmIds.add(filmId);
+            expectedCounts.put(filmId, exactSimilarFilmIds.size());
+            if (!exactSimilarFilmIds.isEmpty()) {
+                double threshold = jaccard(featuresByFilm.get(filmId),
+                        featuresByFilm.get(exactSimilarFilmIds.get(exactSimilarFilmIds.size() - 1)));
+                relevantFilms.put(filmId, featuresByFilm.entrySet().stream()
+                        .filter(other -> !other.getKey().equals(filmId))
+                        .filter(other -> jaccard(featuresByFilm.get(filmId), other.getValue()) >= threshold)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toSet()));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Integer> minHash(final Recall recall) {
+        Integer filmId = nextQueryFilmId();
+        List<Integer> similarFilmIds = filmSimilarityIndex.getSimilarFilmIds(filmId, LIMIT);
+        Set<Integer> relevant = relevantFilms.getOrDefault(filmId, Set.of());
+        recall.expected += expectedCounts.get(filmId);
+        for (Integer similarFilmId : similarFilmIds) {
+            if (relevant.contains(similarFilmId)) {
+                recall.found++;
+            }
+        }
+        return similarFilmIds;
+    }
+
+    @Benchmark
+    public List<Integer> bruteForce() {
+        return getExactSimilarFilmIds(nextQueryFilmId());
+    }
+
+    private Integer nextQueryFilmId() {
+        return queryFilmIds.get(nextQuery++ % queryFilmIds.size());
+    }
+
+    private List<Integer> getExactSimilarFilmIds(final Integer filmId) {
+        int[] features = featuresByFilm.get(filmId);
+        Map<Integer, Double> similarities = new HashMap<>();
+        for (Map.Entry<Integer, int[]> other : featuresByFilm.entrySet()) {
+            double similarity = jaccard(features, other.getValue());
+            if (!other.getKey().equals(filmId) && similarity > 0) {
+                similarities.put(other.getKey(), similarity);
+            }
+        }
+        return similarities.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(LIMIT)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static double jaccard(final int[] features, final int[] otherFeatures) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < features.length && j < otherFeatures.length) {
+            if (features[i] == otherFeatures[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (features[i] < otherFeatures[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = features.length + otherFeatures.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Recall {
+
+        public long found;
+        public long expected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            found = 0;
+            expected = 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация Film и User с большими множествами лайков и друзей в Json тем же ObjectMapper, что у Spring MVC.
+ * Параметр idSet сравнивает SortedIntSet с HashSet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int ids;
+    @Param({"sorted", "hash"})
+    public String idSet;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private Film film;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void makeModels() {
+        film = new Film(1, "Film", "Benchmark film", LocalDate.of(2000, 1, 1), 90, new FilmRating(1, "G"),
+                Set.of(new FilmGenre(1, "Комедия"), new FilmGenre(2, "Драма")), makeIds());
+        user = new User(1, "bench@mail.test", "bench", "Bench", LocalDate.of(1990, 1, 1), makeIds(), makeIds());
+    }
+
+    @Benchmark
+    public byte[] serializeFilm() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(film);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    private Set<Integer> makeIds() {
+        Set<Integer> values = "sorted".equals(idSet) ? new SortedIntSet() : new HashSet<>();
+        for (int i = 1; i <= ids; i++) {
+            values.add(i * 3);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SortedIntSet против HashSet на множествах ID. Методы hydrate* заполняют множество по возрастанию ID, как при
+ * чтении из базы данных; их gc.alloc.rate.norm из профилировщика gc - объем памяти на одно множество
+ * (для SortedIntSet с учетом промежуточных массивов при росте, поэтому это оценка сверху).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortedIntSetBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    private SortedIntSet sortedIntSet;
+    private Set<Integer> hashSet;
+    private int[] probes;
+    private int nextProbe;
+
+    @Setup(Level.Trial)
+    public void makeSets() {
+        sortedIntSet = hydrateSortedIntSet();
+        hashSet = hydrateHashSet();
+        SplittableRandom random = new SplittableRandom(BenchmarkDatabase.SEED);
+        probes = random.ints(1024, 0, size * 2).toArray();
+    }
+
+    @Benchmark
+    public SortedIntSet hydrateSortedIntSet() {
+        SortedIntSet values = new SortedIntSet();
+        for (int i = 0; i < size; i++) {
+            values.addInt(i * 2);
+        }
+        values.trimToSize();
+        return values;
+    }
+
+    @Benchmark
+    public Set<Integer> hydrateHashSet() {
+        Set<Integer> values = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            values.add(i * 2);
+        }
+        return values;
+    }
+
+    @Benchmark
+    public boolean containsSortedIntSet() {
+        return sortedIntSet.containsInt(probes[nextProbe++ & 1023]);
+    }
+
+    @Benchmark
+    public boolean containsHashSet() {
+        return hashSet.contains(probes[nextProbe++ & 1023]);
+    }
+
+    @Benchmark
+    public void iterateSortedIntSet(final Blackhole blackhole) {
+        for (Integer value : sortedIntSet) {
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public void iterateHashSet(final Blackhole blackhole) {
+        for (Integer value : hashSet) {
+            blackhole.consume(value);
+        }
+    }
+}
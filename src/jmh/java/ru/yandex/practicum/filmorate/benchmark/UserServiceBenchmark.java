@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendshipGraph;
+import ru.yandex.practicum.filmorate.service.FriendshipLocks;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы к графу дружбы на встроенной H2. Граф строится по степенному закону, поэтому кроме случайных
+ * пользователей отдельно меряются самые популярные - у них тысячи друзей и друзей друзей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    private static final int HUBS_COUNT = 10;
+
+    @Param("10000")
+    public int users;
+    @Param("10")
+    public int friendsPerUser;
+
+    private BenchmarkDatabase database;
+    private UserService userService;
+    private List<Integer> userIds;
+    private List<Integer> hubIds;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        database = new BenchmarkDatabase();
+        userIds = database.addUsers(users);
+        database.addFriendships(userIds, friendsPerUser);
+        FriendshipLocks friendshipLocks = new FriendshipLocks();
+        FriendshipGraph friendshipGraph = new FriendshipGraph(database.userDbStorage, friendshipLocks);
+        friendshipGraph.rebuild();
+        userService = new UserService(database.userDbStorage, friendshipGraph, friendshipLocks);
+
+        hubIds = new ArrayList<>(userIds);
+        hubIds.sort(Comparator.comparingInt((Integer userId) -> friendshipGraph.getFriendIds(userId).length)
+                .reversed());
+        hubIds = hubIds.subList(0, HUBS_COUNT);
+        random = new SplittableRandom(BenchmarkDatabase.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<User> getUserFriends() {
+        return userService.getUserFriends(randomUser());
+    }
+
+    @Benchmark
+    public List<User> getUserFriendsOfHub() {
+        return userService.getUserFriends(randomHub());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userService.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriendsOfHubs() {
+        return userService.getCommonFriends(randomHub(), randomHub());
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestions() {
+        return userService.getFriendSuggestions(randomUser(), 10);
+    }
+
+    @Benchmark
+    public List<User> getFriendSuggestionsForHub() {
+        return userService.getFriendSuggestions(randomHub(), 10);
+    }
+
+    private Integer randomUser() {
+        return userIds.get(random.nextInt(userIds.size()));
+    }
+
+    private Integer randomHub() {
+        return hubIds.get(random.nextInt(hubIds.size()));
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Отчет нагрузочного теста: распределение задержек каждого запроса в формате .hgrm (значения в миллисекундах)
+ * и сводка summary.json с перцентилями и пропускной способностью, которую можно сохранить как базовую линию
+ * и сравнивать с ней следующие прогоны.
+ */
+@Slf4j
+class LatencyReport {
+
+    private static final double MICROS_IN_MILLI = 1000.0;
+    private static final String SUMMARY_FILE = "summary.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, OpenLoopLoadGenerator.EndpointResult> results;
+    private final Summary summary = new Summary();
+
+    LatencyReport(final Map<String, OpenLoopLoadGenerator.EndpointResult> results, final LoadTestSettings settings) {
+        this.results = results;
+        summary.rate = settings.rate;
+        summary.concurrency = settings.concurrency;
+        results.forEach((endpoint, result) -> {
+            Histogram latency = result.getLatency();
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("count", (double) latency.getTotalCount());
+            values.put("errors", (double) result.getErrors());
+            values.put("throughput", result.getThroughput());
+            values.put("p50", latency.getValueAtPercentile(50) / MICROS_IN_MILLI);
+            values.put("p90", latency.getValueAtPercentile(90) / MICROS_IN_MILLI);
+            values.put("p99", latency.getValueAtPercentile(99) / MICROS_IN_MILLI);
+            values.put("p99.9", latency.getValueAtPercentile(99.9) / MICROS_IN_MILLI);
+            values.put("max", latency.getMaxValue() / MICROS_IN_MILLI);
+            summary.endpoints.put(endpoint, values);
+        });
+    }
+
+    void write(final Path reportDir) throws IOException {
+        Files.createDirectories(reportDir);
+        for (Map.Entry<String, OpenLoopLoadGenerator.EndpointResult> result : results.entrySet()) {
+            Path file = reportDir.resolve(result.getKey().replaceAll("[^A-Za-z0-9]+", "-")
+                    .replaceAll("^-|-$", "") + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                result.getValue().getLatency().outputPercentileDistribution(out, MICROS_IN_MILLI);
+            }
+        }
+        objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValue(reportDir.resolve(SUMMARY_FILE).toFile(), summary);
+
+        summary.endpoints.forEach((endpoint, values) -> log.info(String.format("%-36s запросов %7.0f, "
+                        + "ошибок %5.0f, %8.1f/с, p50 %8.2f мс, p90 %8.2f мс, p99 %8.2f мс, p99.9 %8.2f мс, "
+                        + "max %8.2f мс", endpoint, values.get("count"), values.get("errors"),
+                values.get("throughput"), values.get("p50"), values.get("p90"), values.get("p99"),
+                values.get("p99.9"), values.get("max"))));
+        log.info("Отчет записан в {}", reportDir.toAbsolutePath());
+    }
+
+    /**
+     * Сравнивает p50, p99 и пропускную способность с базовой линией.
+     *
+     * @param maxRegression допустимое ухудшение p99 или пропускной способности в процентах, 0 - не проверять
+     * @return false, если хотя бы один запрос ухудшился больше допустимого
+     */
+    boolean compareWithBaseline(final Path baselineFile, final double maxRegression) throws IOException {
+        Summary baseline = objectMapper.readValue(baselineFile.toFile(), Summary.class);
+        boolean withinLimits = true;
+        log.info("Сравнение с базовой линией {}", baselineFile.toAbsolutePath());
+        if (baseline.rate != summary.rate || baseline.concurrency != summary.concurrency) {
+            log.warn("Базовая линия снята при другой нагрузке: {} запросов/с и {} потоков, сравнение некорректно",
+                    baseline.rate, baseline.concurrency);
+        }
+        for (Map.Entry<String, Map<String, Double>> entry : summary.endpoints.entrySet()) {
+            Map<String, Double> before = baseline.endpoints.get(entry.getKey());
+            if (before == null) {
+                log.info("{}: нет в базовой линии", entry.getKey());
+                continue;
+            }
+            Map<String, Double> after = entry.getValue();
+            double p99Change = change(before.get("p99"), after.get("p99"));
+            double throughputChange = change(before.get("throughput"), after.get("throughput"));
+            log.info(String.format("%-36s p50 %8.2f -> %8.2f мс (%+6.1f%%), p99 %8.2f -> %8.2f мс (%+6.1f%%), "
+                            + "%8.1f -> %8.1f/с (%+6.1f%%)", entry.getKey(),
+                    before.get("p50"), after.get("p50"), change(before.get("p50"), after.get("p50")),
+                    before.get("p99"), after.get("p99"), p99Change,
+                    before.get("throughput"), after.get("throughput"), throughputChange));
+            if (maxRegression > 0 && (p99Change > maxRegression || -throughputChange > maxRegression)) {
+                log.warn("{}: ухудшение больше допустимых {}%", entry.getKey(), maxRegression);
+                withinLimits = false;
+            }
+        }
+        return withinLimits;
+    }
+
+    private static double change(final double before, final double after) {
+        return before == 0 ? 0 : (after - before) / before * 100;
+    }
+
+    /**
+     * Содержимое summary.json: параметры нагрузки и показатели каждого запроса.
+     */
+    static class Summary {
+
+        public double rate;
+        public int concurrency;
+        public Map<String, Map<String, Double>> endpoints = new LinkedHashMap<>();
+    }
+}
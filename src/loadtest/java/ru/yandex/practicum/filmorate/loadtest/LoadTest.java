@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Поднимает FilmorateApplication на случайном порту с синтетическими данными профиля dataset, подает на него
+ * нагрузку из {@link TrafficMix} и пишет отчет {@link LatencyReport}. Если задана базовая линия и допустимое
+ * ухудшение, при превышении завершается с кодом 1.
+ */
+@Slf4j
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        boolean withinLimits = true;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .run(settings.applicationArgs())) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            TrafficMix trafficMix = new TrafficMix(URI.create("http://localhost:" + port), settings.users,
+                    settings.films);
+
+            Map<String, OpenLoopLoadGenerator.EndpointResult> results =
+                    new OpenLoopLoadGenerator(settings, trafficMix).run();
+
+            LatencyReport report = new LatencyReport(results, settings);
+            report.write(settings.reportDir);
+            if (settings.baseline != null) {
+                withinLimits = report.compareWithBaseline(settings.baseline, settings.maxRegression);
+            }
+        }
+        System.exit(withinLimits ? 0 : 1);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Параметры нагрузочного теста из системных свойств loadtest.* и filmorate.dataset.*.
+ */
+class LoadTestSettings {
+
+    final double rate;
+    final int concurrency;
+    final Duration warmup;
+    final Duration duration;
+    final int burstSize;
+    final Duration burstInterval;
+    final long seed;
+    final Path reportDir;
+    final Path baseline;
+    final double maxRegression;
+    final int users;
+    final int films;
+    final int likes;
+    final int friendships;
+
+    private LoadTestSettings() {
+        rate = Double.parseDouble(property("loadtest.rate", "50"));
+        concurrency = Integer.parseInt(property("loadtest.concurrency", "16"));
+        warmup = Duration.ofSeconds(Long.parseLong(property("loadtest.warmup", "15")));
+        duration = Duration.ofSeconds(Long.parseLong(property("loadtest.duration", "60")));
+        burstSize = Integer.parseInt(property("loadtest.burst-size", "20"));
+        burstInterval = Duration.ofSeconds(Long.parseLong(property("loadtest.burst-interval", "10")));
+        seed = Long.parseLong(property("loadtest.seed", "20240411"));
+        reportDir = Path.of(property("loadtest.report-dir", "target/loadtest"));
+        String baselinePath = property("loadtest.baseline", "");
+        baseline = baselinePath.isBlank() ? null : Path.of(baselinePath);
+        maxRegression = Double.parseDouble(property("loadtest.max-regression", "0"));
+        users = Integer.parseInt(property("filmorate.dataset.users", "10000"));
+        films = Integer.parseInt(property("filmorate.dataset.films", "5000"));
+        likes = Integer.parseInt(property("filmorate.dataset.likes", "200000"));
+        friendships = Integer.parseInt(property("filmorate.dataset.friendships", "100000"));
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings();
+    }
+
+    /**
+     * Аргументы командной строки приложения: случайный порт, отдельная база данных в памяти и размеры
+     * набора данных. Журнал запросов контроллеров отключен, чтобы не нагружать общий процессор.
+     */
+    String[] applicationArgs() {
+        return List.of(
+                "--spring.profiles.active=dataset",
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;mode=MySQL",
+                "--filmorate.dataset.users=" + users,
+                "--filmorate.dataset.films=" + films,
+                "--filmorate.dataset.likes=" + likes,
+                "--filmorate.dataset.friendships=" + friendships,
+                "--logging.level.ru.yandex.practicum.filmorate=warn",
+                "--logging.level.ru.yandex.practicum.filmorate.dataset=info",
+                "--logging.level.ru.yandex.practicum.filmorate.loadtest=info",
+                "--logging.level.org.springframework.web.servlet.DispatcherServlet=warn"
+        ).toArray(String[]::new);
+    }
+
+    private static String property(final String name, final String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор с открытой моделью нагрузки: запросы приходят по пуассоновскому потоку с заданной частотой
+ * и каждые burstInterval пачкой из burstSize запросов записи, независимо от того, успевает ли сервис отвечать.
+ * Запросы выполняют concurrency потоков, лишние ждут в очереди. Задержка считается от запланированного
+ * времени отправки, поэтому ожидание в очереди клиента входит в нее и перегрузка не прячется
+ * (coordinated omission). В гистограммы попадают только запросы, запланированные после прогрева.
+ */
+@Slf4j
+class OpenLoopLoadGenerator {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final LoadTestSettings settings;
+    private final TrafficMix trafficMix;
+    private final HttpClient httpClient;
+    private final Map<String, EndpointResult> results = new LinkedHashMap<>();
+
+    OpenLoopLoadGenerator(final LoadTestSettings settings, final TrafficMix trafficMix) {
+        this.settings = settings;
+        this.trafficMix = trafficMix;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (TrafficMix.Endpoint endpoint : trafficMix.getEndpoints()) {
+            results.put(endpoint.getName(), new EndpointResult());
+        }
+    }
+
+    Map<String, EndpointResult> run() throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(settings.seed);
+        ExecutorService workers = Executors.newFixedThreadPool(settings.concurrency);
+        long meanIntervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / settings.rate);
+        long burstIntervalNanos = settings.burstSize == 0 ? Long.MAX_VALUE : settings.burstInterval.toNanos();
+        long startedAt = System.nanoTime();
+        long measuredFrom = startedAt + settings.warmup.toNanos();
+        long finishAt = measuredFrom + settings.duration.toNanos();
+        long nextArrival = startedAt;
+        long nextBurst = startedAt + burstIntervalNanos;
+        log.info("Нагрузка: {} запросов/с, {} потоков, прогрев {} с, измерение {} с", settings.rate,
+                settings.concurrency, settings.warmup.toSeconds(), settings.duration.toSeconds());
+
+        while (Math.min(nextArrival, nextBurst) < finishAt) {
+            long scheduledAt;
+            if (nextBurst <= nextArrival) {
+                scheduledAt = nextBurst;
+                nextBurst += burstIntervalNanos;
+                waitUntil(scheduledAt);
+                for (int i = 0; i < settings.burstSize; i++) {
+                    submit(workers, trafficMix.nextBurstEndpoint(random), random, scheduledAt, measuredFrom);
+                }
+            } else {
+                scheduledAt = nextArrival;
+                nextArrival += Math.round(-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+                waitUntil(scheduledAt);
+                submit(workers, trafficMix.nextEndpoint(random), random, scheduledAt, measuredFrom);
+            }
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            log.warn("Не все запросы завершились за минуту после окончания нагрузки");
+            workers.shutdownNow();
+        }
+        for (EndpointResult result : results.values()) {
+            result.measuredNanos = Math.max(finishAt, result.lastCompletedAt.get()) - measuredFrom;
+        }
+        return results;
+    }
+
+    private void submit(final ExecutorService workers, final TrafficMix.Endpoint endpoint,
+                        final SplittableRandom random, final long scheduledAt, final long measuredFrom) {
+        HttpRequest request = trafficMix.makeRequest(endpoint, random);
+        EndpointResult result = scheduledAt >= measuredFrom ? results.get(endpoint.getName()) : null;
+        workers.execute(() -> send(request, result, scheduledAt));
+    }
+
+    private void send(final HttpRequest request, final EndpointResult result, final long scheduledAt) {
+        boolean failed;
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            failed = response.statusCode() >= 400;
+        } catch (IOException e) {
+            failed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (result != null) {
+            long completedAt = System.nanoTime();
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(completedAt - scheduledAt);
+            result.latency.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+            result.lastCompletedAt.accumulateAndGet(completedAt, Math::max);
+            if (failed) {
+                result.errors.incrementAndGet();
+            }
+        }
+    }
+
+    private static void waitUntil(final long nanoTime) {
+        long delay;
+        while ((delay = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+        }
+    }
+
+    /**
+     * Задержки ответов одного запроса смеси в микросекундах, количество ответов с ошибкой и пропускная
+     * способность: ответы за время от конца прогрева до последнего ответа, но не меньше времени измерения.
+     * При перегрузке она ниже заданной частоты.
+     */
+    static class EndpointResult {
+
+        private final Histogram latency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong lastCompletedAt = new AtomicLong(Long.MIN_VALUE);
+        private long measuredNanos;
+
+        Histogram getLatency() {
+            return latency;
+        }
+
+        long getErrors() {
+            return errors.get();
+        }
+
+        double getThroughput() {
+            return latency.getTotalCount() * 1e9 / measuredNanos;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+
+/**
+ * Смесь запросов: чтение фильмов, популярных фильмов и друзей, изредка лайки и заявки в друзья. Пачки
+ * записи, которые генератор добавляет поверх основного потока, состоят только из лайков и заявок в друзья.
+ * ID пользователей и фильмов выбираются равновероятно из сгенерированного набора данных.
+ */
+class TrafficMix {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI baseUri;
+    private final int users;
+    private final int films;
+    private final List<Endpoint> endpoints;
+    private final List<Endpoint> burstEndpoints;
+    private final int totalWeight;
+
+    TrafficMix(final URI baseUri, final int users, final int films) {
+        this.baseUri = baseUri;
+        this.users = users;
+        this.films = films;
+        Endpoint filmsPage = new Endpoint("GET /films", 30,
+                (mix, random) -> mix.get("/films?limit=50"));
+        Endpoint popularFilms = new Endpoint("GET /films/popular", 30,
+                (mix, random) -> mix.get("/films/popular?count=10"));
+        Endpoint userFriends = new Endpoint("GET /users/{id}/friends", 30,
+                (mix, random) -> mix.get("/users/" + mix.userId(random) + "/friends"));
+        Endpoint addLike = new Endpoint("PUT /films/{id}/like/{userId}", 5,
+                (mix, random) -> mix.put("/films/" + mix.filmId(random) + "/like/" + mix.userId(random)));
+        Endpoint addFriend = new Endpoint("PUT /users/{id}/friends/{friendId}", 5,
+                (mix, random) -> mix.put("/users/" + mix.userId(random) + "/friends/" + mix.userId(random)));
+        this.endpoints = List.of(filmsPage, popularFilms, userFriends, addLike, addFriend);
+        this.burstEndpoints = List.of(addLike, addFriend);
+        this.totalWeight = endpoints.stream().mapToInt(Endpoint::getWeight).sum();
+    }
+
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    Endpoint nextEndpoint(final SplittableRandom random) {
+        int point = random.nextInt(totalWeight);
+        for (Endpoint endpoint : endpoints) {
+            point -= endpoint.getWeight();
+            if (point < 0) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException("Сумма весов запросов посчитана неверно");
+    }
+
+    Endpoint nextBurstEndpoint(final SplittableRandom random) {
+        return burstEndpoints.get(random.nextInt(burstEndpoints.size()));
+    }
+
+    HttpRequest makeRequest(final Endpoint endpoint, final SplittableRandom random) {
+        return endpoint.requestFactory.apply(this, random);
+    }
+
+    private int userId(final SplittableRandom random) {
+        return 1 + random.nextInt(users);
+    }
+
+    private int filmId(final SplittableRandom random) {
+        return 1 + random.nextInt(films);
+    }
+
+    private HttpRequest get(final String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest put(final String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(REQUEST_TIMEOUT)
+                .PUT(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    static class Endpoint {
+
+        private final String name;
+        private final int weight;
+        private final BiFunction<TrafficMix, SplittableRandom, HttpRequest> requestFactory;
+
+        private Endpoint(final String name, final int weight,
+                         final BiFunction<TrafficMix, SplittableRandom, HttpRequest> requestFactory) {
+            this.name = name;
+            this.weight = weight;
+            this.requestFactory = requestFactory;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getWeight() {
+            return weight;
+        }
+    }
+}
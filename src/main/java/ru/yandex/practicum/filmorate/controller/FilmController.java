@@ -1,24 +1,42 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
 @RequestMapping("/films")
+@Validated
 @Slf4j
 public class FilmController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
     private final FilmService filmService;
+    private final ObjectWriter filmWriter;
 
     @Autowired
-    public FilmController(final FilmService filmService) {
+    public FilmController(final FilmService filmService, final ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.filmWriter = objectMapper.writerFor(Film.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
     @PostMapping
@@ -27,10 +45,21 @@ public class FilmController {
         return filmService.add(film);
     }
 
+    @PostMapping("/batch")
+    public List<Integer> addFilms(@RequestBody List<@Valid Film> films) {
+        log.info("Получен POST запрос на пакетное добавление {} фильмов в базу данных", films.size());
+        return filmService.addFilms(films);
+    }
+
+    @PostMapping("/likes/batch")
+    public List<FilmLike> addLikes(@RequestBody List<@Valid FilmLike> likes) {
+        log.info("Получен POST запрос на пакетное добавление {} лайков", likes.size());
+        return filmService.addLikes(likes);
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
-        log.info("Получен PUT запрос за обновление информации о фильме. Было:\n{}\n Стало:\n {}",
-                filmService.getFilmById(film.getId()), film);
+        log.info("Получен PUT запрос за обновление информации о фильме:\n {}", film);
         return filmService.updateFilm(film);
     }
 
@@ -40,6 +69,32 @@ public class FilmController {
         return filmService.getAllFilms();
     }
 
+    @GetMapping(params = "limit")
+    public Page<Film> getFilmsPage(@RequestParam Integer limit, @RequestParam(required = false) String after) {
+        log.info("Получен GET запрос на получение страницы из {} фильмов после курсора '{}'", limit, after);
+        return filmService.getFilmsPage(limit, after);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        log.info("Получен GET запрос на потоковую выгрузку всех фильмов");
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = filmWriter.createGenerator(outputStream)) {
+                filmService.exportFilms(film -> {
+                    try {
+                        filmWriter.writeValue(generator, film);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+                generator.writeRaw('\n');
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/{filmId}")
     public Film getFilmById(@PathVariable Integer filmId) {
         log.info("Получен GET запрос на нахождения фильма по ID: {}", filmId);
@@ -47,17 +102,23 @@ public class FilmController {
     }
 
     @PutMapping("/{filmId}/like/{userId}")
-    public List<Integer> addLikeToFilm(@PathVariable Integer filmId, @PathVariable Integer userId) {
+    public Integer addLikeToFilm(@PathVariable Integer filmId, @PathVariable Integer userId) {
         log.info("Получен PUT запрос на добавление лайка к фильму по ID: {} Пользователем по ID: {}", filmId, userId);
         return filmService.addLike(filmId, userId);
     }
 
     @DeleteMapping("/{filmId}/like/{userId}")
-    public List<Integer> removeLikeFromFilm(@PathVariable Integer filmId, @PathVariable Integer userId) {
+    public Integer removeLikeFromFilm(@PathVariable Integer filmId, @PathVariable Integer userId) {
         log.info("Получен DELETE запрос на удаление лайка у фильма по ID: {} Пользователем по ID: {}", filmId, userId);
         return filmService.removeLike(filmId, userId);
     }
 
+    @GetMapping("/{filmId}/similar")
+    public List<Film> getSimilarFilms(@PathVariable Integer filmId, @RequestParam(defaultValue = "10") Integer count) {
+        log.info("Получен GET запрос на получение {} фильмов, похожих на фильм ID: {}", count, filmId);
+        return filmService.getSimilarFilms(filmId, count);
+    }
+
     @GetMapping("/popular")
     public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") Integer count) {
         log.info("Получен GET запрос на получения популярных по лайкам фильмов с ограничением вывода '{}' фильмов",
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/users")
+@Slf4j
+public class RecommendationController {
+
+    private final FilmService filmService;
+
+    @Autowired
+    public RecommendationController(final FilmService filmService) {
+        this.filmService = filmService;
+    }
+
+    @GetMapping("/{userId}/recommendations")
+    public List<Film> getRecommendedFilms(@PathVariable Integer userId,
+                                          @RequestParam(defaultValue = "10") Integer count) {
+        log.info("Получен GET запрос на получение {} рекомендуемых фильмов для пользователя ID: {}", count, userId);
+        return filmService.getRecommendedFilms(userId, count);
+    }
+}
@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -11,6 +13,7 @@ import java.util.List;
 
 @RestController
 @RequestMapping("/users")
+@Validated
 @Slf4j
 public class UserController {
 
@@ -27,10 +30,15 @@ public class UserController {
         return userService.addUser(user);
     }
 
+    @PostMapping("/batch")
+    public List<Integer> addUsers(@RequestBody List<@Valid User> users) {
+        log.info("Получен POST запрос на пакетное добавление {} пользователей в базу данных", users.size());
+        return userService.addUsers(users);
+    }
+
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
-        log.info("Получен PUT запрос на обновление пользователя. Было:\n{}\n Стало:\n {}",
-                userService.getUserById(user.getId()), user);
+        log.info("Получен PUT запрос на обновление пользователя:\n {}", user);
         return userService.updateUser(user);
     }
 
@@ -40,6 +48,12 @@ public class UserController {
         return userService.getAllUsers();
     }
 
+    @GetMapping(params = "limit")
+    public Page<User> getUsersPage(@RequestParam Integer limit, @RequestParam(required = false) String after) {
+        log.info("Получен GET запрос на получение страницы из {} пользователей после курсора '{}'", limit, after);
+        return userService.getUsersPage(limit, after);
+    }
+
     @GetMapping("/{userId}")
     public User getUserById(@PathVariable Integer userId) {
         log.info("Получен GET запрос на нахождение пользователя по ID: {}", userId);
@@ -66,10 +80,25 @@ public class UserController {
         return userService.getUserFriends(userId);
     }
 
+    @GetMapping(value = "/{userId}/friends", params = "limit")
+    public Page<User> getUserFriendsPage(@PathVariable Integer userId, @RequestParam Integer limit,
+                                         @RequestParam(required = false) String after) {
+        log.info("Получен GET запрос на получение страницы из {} друзей пользователя ID: {} после курсора '{}'",
+                limit, userId, after);
+        return userService.getUserFriendsPage(userId, limit, after);
+    }
+
     @GetMapping("/{userId}/friends/common/{otherUserId}")
     public List<User> getCommonFriendsWithOtherUser(@PathVariable Integer userId, @PathVariable Integer otherUserId) {
         log.info("Получен GET запрос на получения списка общих друзей с пользователем ID: {} от пользователя ID: {}",
                 otherUserId, userId);
         return userService.getCommonFriends(userId, otherUserId);
     }
+
+    @GetMapping("/{userId}/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable Integer userId,
+                                           @RequestParam(defaultValue = "10") Integer limit) {
+        log.info("Получен GET запрос на получение {} рекомендуемых друзей для пользователя ID: {}", limit, userId);
+        return userService.getFriendSuggestions(userId, limit);
+    }
 }
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingInitializationContext;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Генерирует синтетические данные без запуска сервиса: применяет миграции к базе данных из spring.datasource.*
+ * и заполняет ее {@link DatasetGenerator}. Настройки берутся из application.properties
+ * и application-dataset.properties, системные свойства с теми же именами их переопределяют.
+ */
+@Slf4j
+public class DatasetCli {
+
+    private static final String LOGGING_LEVEL_PREFIX = "logging.level.";
+
+    public static void main(String[] args) throws IOException {
+        Properties properties = new Properties();
+        load(properties, "application.properties");
+        load(properties, "application-dataset.properties");
+        properties.putAll(System.getProperties());
+        configureLogging(properties);
+
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                properties.getProperty("spring.datasource.url"), properties.getProperty("spring.datasource.username"),
+                properties.getProperty("spring.datasource.password"), true);
+        try {
+            Flyway.configure()
+                    .dataSource(dataSource)
+                    .baselineOnMigrate(Boolean.parseBoolean(properties.getProperty(
+                            "spring.flyway.baseline-on-migrate")))
+                    .baselineVersion(properties.getProperty("spring.flyway.baseline-version"))
+                    .load()
+                    .migrate();
+
+            int users = Integer.parseInt(properties.getProperty("filmorate.dataset.users"));
+            int films = Integer.parseInt(properties.getProperty("filmorate.dataset.films"));
+            int likes = Integer.parseInt(properties.getProperty("filmorate.dataset.likes"));
+            int friendships = Integer.parseInt(properties.getProperty("filmorate.dataset.friendships"));
+            long seed = Long.parseLong(properties.getProperty("filmorate.dataset.seed"));
+            log.info("Генерация синтетических данных в {}: {} пользователей, {} фильмов, {} лайков, {} дружб, "
+                    + "зерно {}", dataSource.getUrl(), users, films, likes, friendships, seed);
+            new DatasetGenerator(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource), seed,
+                    Double.parseDouble(properties.getProperty("filmorate.dataset.zipf-exponent")))
+                    .generate(users, films, likes, friendships);
+        } finally {
+            dataSource.destroy();
+        }
+    }
+
+    /**
+     * Без Spring Boot logback пишет все на уровне DEBUG, в том числе SQL каждого пакета, поэтому журнал
+     * настраивается так же, как в сервисе: формат Spring Boot, уровень INFO и уровни из свойств logging.level.*.
+     */
+    private static void configureLogging(final Properties properties) {
+        LoggingSystem loggingSystem = LoggingSystem.get(DatasetCli.class.getClassLoader());
+        loggingSystem.beforeInitialize();
+        loggingSystem.initialize(new LoggingInitializationContext(new StandardEnvironment()), null, null);
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(LOGGING_LEVEL_PREFIX)) {
+                loggingSystem.setLogLevel(name.substring(LOGGING_LEVEL_PREFIX.length()),
+                        LogLevel.valueOf(properties.getProperty(name).toUpperCase()));
+            }
+        }
+    }
+
+    private static void load(final Properties properties, final String resource) throws IOException {
+        try (InputStream in = DatasetCli.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Не найден файл настроек " + resource);
+            }
+            properties.load(in);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * В профиле dataset заполняет пустую базу данных синтетическими данными сразу после миграций, до того как
+ * рейтинг, рекомендации, индекс похожих фильмов и граф дружбы прочитают данные при старте.
+ * Если в базе данных уже есть пользователи или фильмы, генерация пропускается.
+ */
+@Component
+@Profile("dataset")
+@Slf4j
+public class DatasetFlywayCallback implements Callback {
+
+    private final int users;
+    private final int films;
+    private final int likes;
+    private final int friendships;
+    private final long seed;
+    private final double zipfExponent;
+    private final PlatformTransactionManager transactionManager;
+
+    @Autowired
+    public DatasetFlywayCallback(@Value("${filmorate.dataset.users}") int users,
+                                 @Value("${filmorate.dataset.films}") int films,
+                                 @Value("${filmorate.dataset.likes}") int likes,
+                                 @Value("${filmorate.dataset.friendships}") int friendships,
+                                 @Value("${filmorate.dataset.seed}") long seed,
+                                 @Value("${filmorate.dataset.zipf-exponent}") double zipfExponent,
+                                 PlatformTransactionManager transactionManager) {
+        this.users = users;
+        this.films = films;
+        this.likes = likes;
+        this.friendships = friendships;
+        this.seed = seed;
+        this.zipfExponent = zipfExponent;
+        this.transactionManager = transactionManager;
+    }
+
+    @Override
+    public boolean supports(final Event event, final Context context) {
+        return event == Event.AFTER_MIGRATE;
+    }
+
+    @Override
+    public boolean canHandleInTransaction(final Event event, final Context context) {
+        return false;
+    }
+
+    @Override
+    public void handle(final Event event, final Context context) {
+        DatasetGenerator generator = new DatasetGenerator(
+                new JdbcTemplate(context.getConfiguration().getDataSource()), transactionManager, seed, zipfExponent);
+        if (!generator.isDatabaseEmpty()) {
+            log.warn("База данных уже заполнена, синтетические данные не генерируются");
+            return;
+        }
+        log.info("Генерация синтетических данных: {} пользователей, {} фильмов, {} лайков, {} дружб, зерно {}",
+                users, films, likes, friendships, seed);
+        generator.generate(users, films, likes, friendships);
+    }
+
+    @Override
+    public String getCallbackName() {
+        return "dataset";
+    }
+}
@@ -0,0 +1,433 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Заполняет пустую схему синтетическими данными: пользователи, фильмы с жанрами, лайки по закону Ципфа
+ * и взаимная дружба по модели предпочтительного присоединения (степени пользователей - степенной закон).
+ * Результат зависит только от зерна и размеров: каждая таблица генерируется своим потоком случайных чисел,
+ * поэтому, например, изменение количества лайков не меняет фильмы и граф дружбы.
+ * ID задаются явно с 1, после загрузки счетчики ID сдвигаются за последний ID.
+ * На время загрузки отключается проверка ссылочной целостности, а внешние ключи и неуникальные индексы
+ * таблиц связей удаляются и создаются заново по заполненным таблицам.
+ */
+@Slf4j
+public class DatasetGenerator {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int ROWS_PER_INSERT = 1_000;
+    private static final String RELATION_TABLES = "'MOVIE_GENRE', 'MOVIE_LIKE', 'FRIENDS'";
+    private static final int GENRES_COUNT = 6;
+    private static final int RATINGS_COUNT = 5;
+    private static final int MAX_GENRES_PER_FILM = 3;
+    private static final LocalDate FIRST_RELEASE_DATE = LocalDate.of(1930, 1, 1);
+    private static final LocalDate FIRST_BIRTHDAY = LocalDate.of(1950, 1, 1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long seed;
+    private final double zipfExponent;
+
+    public DatasetGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, long seed,
+                            double zipfExponent) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.seed = seed;
+        this.zipfExponent = zipfExponent;
+    }
+
+    public boolean isDatabaseEmpty() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class) == 0
+                && jdbcTemplate.queryForObject("SELECT COUNT(*) FROM movies", Integer.class) == 0;
+    }
+
+    public void generate(final int users, final int films, final int likes, final int friendships) {
+        if (!isDatabaseEmpty()) {
+            throw new IllegalStateException("Генерировать данные можно только в пустую базу данных: "
+                    + "в таблицах users или movies уже есть строки");
+        }
+
+        long startedAt = System.nanoTime();
+        DeferredKeys deferredKeys = DeferredKeys.read(jdbcTemplate);
+        long rows;
+        long loadedAt;
+        deferredKeys.drop();
+        jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        try {
+            rows = addUsers(users) + addFilms(films) + addLikes(users, films, likes)
+                    + addFriendships(users, friendships);
+        } finally {
+            loadedAt = System.nanoTime();
+            deferredKeys.create();
+            jdbcTemplate.execute("SET REFERENTIAL_INTEGRITY TRUE");
+        }
+        jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (users + 1));
+        jdbcTemplate.execute("ALTER TABLE movies ALTER COLUMN id RESTART WITH " + (films + 1));
+
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        log.info("Синтетические данные загружены: {} строк за {} с ({} строк/с), из них индексы и внешние ключи "
+                        + "построены за {} с", rows, String.format("%.1f", seconds), Math.round(rows / seconds),
+                String.format("%.1f", (System.nanoTime() - loadedAt) / 1e9));
+    }
+
+    private long addUsers(final int users) {
+        SplittableRandom random = new SplittableRandom(seed);
+        RowBuffer rows = new RowBuffer("INSERT INTO users (id, email, login, name, birthday) VALUES ",
+                "(?, ?, ?, ?, ?)");
+        for (int id = 1; id <= users; id++) {
+            rows.add(id, "user" + id + "@dataset.test", "user" + id, "User " + id,
+                    Date.valueOf(FIRST_BIRTHDAY.plusDays(random.nextInt(20_000))));
+        }
+        return rows.finish("users");
+    }
+
+    private long addFilms(final int films) {
+        SplittableRandom random = new SplittableRandom(seed + 1);
+        RowBuffer movieRows = new RowBuffer("INSERT INTO movies (id, title, description, duration, release_date, "
+                + "rating_id) VALUES ", "(?, ?, ?, ?, ?, ?)");
+        for (int id = 1; id <= films; id++) {
+            movieRows.add(id, "Film " + id, "Synthetic film " + id, 60 + random.nextInt(120),
+                    Date.valueOf(FIRST_RELEASE_DATE.plusDays(random.nextInt(33_000))),
+                    1 + random.nextInt(RATINGS_COUNT));
+        }
+        long rows = movieRows.finish("movies");
+
+        RowBuffer genreRows = new RowBuffer("INSERT INTO movie_genre (movie_id, genre_id) VALUES ", "(?, ?)");
+        for (int id = 1; id <= films; id++) {
+            SortedIntSet genres = new SortedIntSet();
+            for (int i = random.nextInt(MAX_GENRES_PER_FILM + 1); i > 0; i--) {
+                genres.addInt(1 + random.nextInt(GENRES_COUNT));
+            }
+            for (int genreId : genres.toIntArray()) {
+                genreRows.add(id, genreId);
+            }
+        }
+        return rows + genreRows.finish("movie_genre");
+    }
+
+    /**
+     * Количество лайков пользователя распределено экспоненциально, а фильм выбирается по закону Ципфа:
+     * фильм ранга k получает лайки с вероятностью, пропорциональной 1 / k^s. Ранги перемешаны, чтобы
+     * популярность не совпадала с порядком ID.
+     */
+    private long addLikes(final int users, final int films, final int likes) {
+        if (users == 0 || films == 0) {
+            return 0;
+        }
+        SplittableRandom random = new SplittableRandom(seed + 2);
+        int[] filmIdByRank = shuffledIds(films, random);
+        double[] rankDistribution = zipfDistribution(films);
+        int[] likesByUser = splitExponentially(likes, users, films / 2 + 1, random);
+
+        long[] rows = new long[likes];
+        int rowsCount = 0;
+        for (int userId = 1; userId <= users; userId++) {
+            SortedIntSet filmIds = new SortedIntSet();
+            int attempts = likesByUser[userId - 1] * 50;
+            while (filmIds.size() < likesByUser[userId - 1] && attempts-- > 0) {
+                int rank = Arrays.binarySearch(rankDistribution, random.nextDouble());
+                filmIds.addInt(filmIdByRank[Math.min(rank < 0 ? -rank - 1 : rank, films - 1)]);
+            }
+            for (int filmId : filmIds.toIntArray()) {
+                rows[rowsCount++] = pair(filmId, userId);
+            }
+        }
+        return addPairs("INSERT INTO movie_like (movie_id, user_id) VALUES ", "(?, ?)", rows, rowsCount,
+                "movie_like");
+    }
+
+    /**
+     * Каждый новый пользователь дружит с уже добавленными: с вероятностью 3/4 второй конец выбирается
+     * пропорционально числу друзей (случайный конец уже созданной связи), иначе равновероятно.
+     * Первым пользователям не хватает кандидатов, недостающие связи переходят к следующим.
+     * Дружба взаимная и подтвержденная, поэтому каждая связь - две строки в friends.
+     */
+    private long addFriendships(final int users, final int friendships) {
+        if (users < 2 || friendships == 0) {
+            return 0;
+        }
+        SplittableRandom random = new SplittableRandom(seed + 3);
+        long[] rows = new long[2 * friendships];
+        int rowsCount = 0;
+        long shortage = 0;
+        for (int userId = 2; userId <= users; userId++) {
+            long target = shortage + (long) friendships * (userId - 1) / (users - 1)
+                    - (long) friendships * (userId - 2) / (users - 1);
+            long friendsCount = Math.min(target, userId - 1);
+            shortage = target - friendsCount;
+            SortedIntSet friendIds = new SortedIntSet();
+            while (friendIds.size() < friendsCount) {
+                friendIds.addInt(rowsCount == 0 || random.nextInt(4) == 0
+                        ? 1 + random.nextInt(userId - 1)
+                        : (int) rows[random.nextInt(rowsCount)]);
+            }
+            for (int friendId : friendIds.toIntArray()) {
+                rows[rowsCount++] = pair(userId, friendId);
+                rows[rowsCount++] = pair(friendId, userId);
+            }
+        }
+        return addPairs("INSERT INTO friends (user_id, friend_id, status) VALUES ", "(?, ?, TRUE)", rows,
+                rowsCount, "friends");
+    }
+
+    private double[] zipfDistribution(final int size) {
+        double[] distribution = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, zipfExponent);
+            distribution[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            distribution[rank] /= sum;
+        }
+        return distribution;
+    }
+
+    /**
+     * Делит total на parts частей с экспоненциально распределенными весами так, что сумма равна total
+     * (если ни одна часть не уперлась в max).
+     */
+    private static int[] splitExponentially(final int total, final int parts, final int max,
+                                            final SplittableRandom random) {
+        double[] weights = new double[parts];
+        double sum = 0;
+        for (int i = 0; i < parts; i++) {
+            weights[i] = -Math.log(1 - random.nextDouble());
+            sum += weights[i];
+        }
+        int[] result = new int[parts];
+        double cumulativeWeight = 0;
+        long assigned = 0;
+        for (int i = 0; i < parts; i++) {
+            cumulativeWeight += weights[i];
+            long upTo = Math.round(total * cumulativeWeight / sum);
+            result[i] = (int) Math.min(upTo - assigned, max);
+            assigned = upTo;
+        }
+        return result;
+    }
+
+    /**
+     * Пары пишутся в порядке первичного ключа: вставка в конец индекса для H2 примерно вдвое дешевле,
+     * чем в случайные места.
+     */
+    private long addPairs(final String insertInto, final String rowValues, final long[] rows, final int rowsCount,
+                          final String table) {
+        Arrays.sort(rows, 0, rowsCount);
+        insertRows(insertInto, rowValues, rowsCount, (ps, parameterIndex, row) -> {
+            ps.setInt(parameterIndex, (int) (rows[row] >>> 32));
+            ps.setInt(parameterIndex + 1, (int) rows[row]);
+        });
+        log.info("В таблицу {} записано {} строк", table, rowsCount);
+        return rowsCount;
+    }
+
+    /**
+     * Записывает строки многострочными INSERT по {@link #ROWS_PER_INSERT} строк: H2 выполняет один оператор
+     * на тысячу строк вместо тысячи операторов пакета. Каждые {@link #BATCH_SIZE} строк пишутся в отдельной
+     * транзакции одним пакетом одинаковых операторов, остаток - отдельным оператором.
+     */
+    private void insertRows(final String insertInto, final String rowValues, final int rowsCount,
+                            final RowSetter rowSetter) {
+        int columns = (int) rowValues.chars().filter(c -> c == '?').count();
+        String sql = insertInto + String.join(", ", Collections.nCopies(ROWS_PER_INSERT, rowValues));
+        for (int from = 0; from < rowsCount; from += BATCH_SIZE) {
+            int batchFrom = from;
+            int batchRows = Math.min(BATCH_SIZE, rowsCount - from);
+            int fullInserts = batchRows / ROWS_PER_INSERT;
+            int tailFrom = batchFrom + fullInserts * ROWS_PER_INSERT;
+            int tailRows = batchRows % ROWS_PER_INSERT;
+            transactionTemplate.executeWithoutResult(status -> {
+                if (fullInserts > 0) {
+                    jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            setRows(ps, rowSetter, columns, batchFrom + i * ROWS_PER_INSERT, ROWS_PER_INSERT);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return fullInserts;
+                        }
+                    });
+                }
+                if (tailRows > 0) {
+                    jdbcTemplate.update(insertInto + String.join(", ", Collections.nCopies(tailRows, rowValues)),
+                            ps -> setRows(ps, rowSetter, columns, tailFrom, tailRows));
+                }
+            });
+        }
+    }
+
+    private static void setRows(final PreparedStatement ps, final RowSetter rowSetter, final int columns,
+                                final int from, final int count) throws SQLException {
+        for (int i = 0; i < count; i++) {
+            rowSetter.setValues(ps, i * columns + 1, from + i);
+        }
+    }
+
+    private static long pair(final int first, final int second) {
+        return (long) first << 32 | second;
+    }
+
+    private static int[] shuffledIds(final int count, final SplittableRandom random) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        return ids;
+    }
+
+    @FunctionalInterface
+    private interface RowSetter {
+        void setValues(PreparedStatement ps, int parameterIndex, int row) throws SQLException;
+    }
+
+    /**
+     * Копит строки и записывает их пакетами по {@link #BATCH_SIZE}, каждый пакет - в отдельной транзакции.
+     */
+    private class RowBuffer {
+
+        private final String insertInto;
+        private final String rowValues;
+        private final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        private long count;
+
+        private RowBuffer(final String insertInto, final String rowValues) {
+            this.insertInto = insertInto;
+            this.rowValues = rowValues;
+        }
+
+        private void add(final Object... row) {
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private long finish(final String table) {
+            flush();
+            log.info("В таблицу {} записано {} строк", table, count);
+            return count;
+        }
+
+        private void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            insertRows(insertInto, rowValues, rows.size(), (ps, parameterIndex, row) -> {
+                Object[] values = rows.get(row);
+                for (int i = 0; i < values.length; i++) {
+                    ps.setObject(parameterIndex + i, values[i]);
+                }
+            });
+            count += rows.size();
+            rows.clear();
+        }
+    }
+
+    /**
+     * Внешние ключи и неуникальные индексы таблиц связей. Их определения читаются из INFORMATION_SCHEMA
+     * до загрузки, поэтому после нее схема совпадает со схемой миграций. Пока их нет, каждая строка связи
+     * пишется в один индекс первичного ключа вместо четырех, а созданные заново индексы H2 строит
+     * по заполненной таблице сортировкой. Внешние ключи создаются без проверки строк (NOCHECK):
+     * ссылки генерируются в диапазоне записанных ID.
+     */
+    private static class DeferredKeys {
+
+        private static final String SELECT_INDEXES = "SELECT i.table_name, i.index_name, c.column_name "
+                + "FROM INFORMATION_SCHEMA.INDEXES i "
+                + "JOIN INFORMATION_SCHEMA.INDEX_COLUMNS c "
+                + "ON c.index_schema = i.index_schema AND c.index_name = i.index_name "
+                + "WHERE i.table_schema = SCHEMA() AND i.table_name IN (" + RELATION_TABLES + ") "
+                + "AND i.index_type_name = 'INDEX' AND NOT i.is_generated "
+                + "ORDER BY i.index_name, c.ordinal_position";
+        private static final String SELECT_FOREIGN_KEYS = "SELECT rc.constraint_name, fk.table_name, fk.column_name, "
+                + "pk.table_name AS referenced_table, pk.column_name AS referenced_column, "
+                + "rc.delete_rule, rc.update_rule "
+                + "FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS rc "
+                + "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE fk "
+                + "ON fk.constraint_schema = rc.constraint_schema AND fk.constraint_name = rc.constraint_name "
+                + "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE pk "
+                + "ON pk.constraint_schema = rc.unique_constraint_schema "
+                + "AND pk.constraint_name = rc.unique_constraint_name "
+                + "AND pk.ordinal_position = fk.position_in_unique_constraint "
+                + "WHERE fk.table_schema = SCHEMA() AND fk.table_name IN (" + RELATION_TABLES + ") "
+                + "ORDER BY rc.constraint_name, fk.ordinal_position";
+
+        private final JdbcTemplate jdbcTemplate;
+        private final List<String> dropStatements = new ArrayList<>();
+        private final List<String> createStatements = new ArrayList<>();
+
+        private DeferredKeys(final JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        private static DeferredKeys read(final JdbcTemplate jdbcTemplate) {
+            DeferredKeys keys = new DeferredKeys(jdbcTemplate);
+            Map<String, String> indexTables = new LinkedHashMap<>();
+            Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+            jdbcTemplate.query(SELECT_INDEXES, rs -> {
+                String index = rs.getString("index_name");
+                indexTables.put(index, rs.getString("table_name"));
+                indexColumns.computeIfAbsent(index, name -> new ArrayList<>()).add(rs.getString("column_name"));
+            });
+            indexTables.forEach((index, table) -> {
+                keys.dropStatements.add("DROP INDEX " + index);
+                keys.createStatements.add("CREATE INDEX " + index + " ON " + table
+                        + " (" + String.join(", ", indexColumns.get(index)) + ")");
+            });
+
+            Map<String, String[]> foreignKeys = new LinkedHashMap<>();
+            Map<String, List<String>> columns = new LinkedHashMap<>();
+            Map<String, List<String>> referencedColumns = new LinkedHashMap<>();
+            jdbcTemplate.query(SELECT_FOREIGN_KEYS, rs -> {
+                String constraint = rs.getString("constraint_name");
+                foreignKeys.put(constraint, new String[]{rs.getString("table_name"),
+                        rs.getString("referenced_table"), rs.getString("delete_rule"), rs.getString("update_rule")});
+                columns.computeIfAbsent(constraint, name -> new ArrayList<>()).add(rs.getString("column_name"));
+                referencedColumns.computeIfAbsent(constraint, name -> new ArrayList<>())
+                        .add(rs.getString("referenced_column"));
+            });
+            foreignKeys.forEach((constraint, definition) -> {
+                keys.dropStatements.add("ALTER TABLE " + definition[0] + " DROP CONSTRAINT " + constraint);
+                keys.createStatements.add("ALTER TABLE " + definition[0] + " ADD CONSTRAINT " + constraint
+                        + " FOREIGN KEY (" + String.join(", ", columns.get(constraint)) + ") REFERENCES "
+                        + definition[1] + " (" + String.join(", ", referencedColumns.get(constraint)) + ")"
+                        + " ON DELETE " + definition[2] + " ON UPDATE " + definition[3] + " NOCHECK");
+            });
+            return keys;
+        }
+
+        private void drop() {
+            dropStatements.forEach(jdbcTemplate::execute);
+        }
+
+        private void create() {
+            createStatements.forEach(jdbcTemplate::execute);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
 
 import javax.validation.Valid;
@@ -34,7 +35,8 @@ public class Film {
     @NonNull
     @Valid
     private Set<FilmGenre> genres = new HashSet<>();
-    private Set<Integer> usersLikes = new HashSet<>();
+    @JsonDeserialize(as = SortedIntSet.class)
+    private Set<Integer> usersLikes = new SortedIntSet();
 
     public Map<String, Object> toMap() {
         Map<String, Object> dbMapping = new HashMap<>();
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLike {
+
+    @NotNull(message = "ID фильма не задан(null)")
+    private Integer filmId;
+    @NotNull(message = "ID пользователя не задан(null)")
+    private Integer userId;
+}
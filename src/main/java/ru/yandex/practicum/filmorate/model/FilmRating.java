@@ -1,21 +1,24 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import lombok.Value;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.NotNull;
 
-@Data
+@Value
 @Builder
-@AllArgsConstructor
-@RequiredArgsConstructor
+@AllArgsConstructor(onConstructor_ = @JsonCreator)
 public class FilmRating {
 
     @NotNull
     @Max(6)
-    private final Integer id;
-    private String name;
+    Integer id;
+    String name;
+
+    public FilmRating(final Integer id) {
+        this(id, null);
+    }
 }
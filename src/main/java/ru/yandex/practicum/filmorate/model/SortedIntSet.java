@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.*;
+
+/**
+ * Множество ID на отсортированном массиве int: 4 байта на элемент вместо Integer и узла HashMap.
+ * Поиск двоичный, добавление по возрастанию (как при чтении из базы данных с ORDER BY) стоит O(1),
+ * добавление в середину сдвигает хвост массива. В Json сериализуется тем же массивом чисел, что и HashSet.
+ */
+public class SortedIntSet extends AbstractSet<Integer> {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values;
+    private int size;
+    private int modCount;
+
+    public SortedIntSet() {
+        this.values = EMPTY;
+    }
+
+    public SortedIntSet(final Collection<Integer> values) {
+        this.values = EMPTY;
+        addAll(values);
+    }
+
+    public static SortedIntSet of(final int... values) {
+        SortedIntSet set = new SortedIntSet();
+        for (int value : values) {
+            set.addInt(value);
+        }
+        return set;
+    }
+
+    public boolean addInt(final int value) {
+        if (size > 0 && values[size - 1] < value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+            modCount++;
+            return true;
+        }
+
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+
+        int insertAt = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = value;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    public boolean containsInt(final int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    public boolean removeInt(final int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+
+        removeAt(index);
+        return true;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public void trimToSize() {
+        if (values.length > size) {
+            values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public boolean add(final Integer value) {
+        return addInt(value);
+    }
+
+    @Override
+    public boolean contains(final Object value) {
+        return value instanceof Integer && containsInt((Integer) value);
+    }
+
+    @Override
+    public boolean remove(final Object value) {
+        return value instanceof Integer && removeInt((Integer) value);
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return values[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += values[i];
+        }
+        return hash;
+    }
+
+    private void removeAt(final int index) {
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        modCount++;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length + (values.length >> 1) + 4));
+        }
+    }
+}
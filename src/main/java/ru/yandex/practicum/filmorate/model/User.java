@@ -1,12 +1,12 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
 
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import java.time.LocalDate;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,8 +26,10 @@ public class User {
     private String name;
     @NonNull
     private LocalDate birthday;
-    private Set<Integer> friendsRequests = new HashSet<>();
-    private Set<Integer> friends = new HashSet<>();
+    @JsonDeserialize(as = SortedIntSet.class)
+    private Set<Integer> friendsRequests = new SortedIntSet();
+    @JsonDeserialize(as = SortedIntSet.class)
+    private Set<Integer> friends = new SortedIntSet();
 
     public Map<String, Object> toMap() {
         Map<String, Object> dbMapping = new HashMap<>();
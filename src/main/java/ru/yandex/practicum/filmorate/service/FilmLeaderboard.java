@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который поддерживается в памяти.
+ * Заполняется из movie_like при старте и обновляется на каждый лайк, поэтому чтение топа из N фильмов
+ * стоит O(N) и проходит без блокировок. Изменения одного фильма упорядочиваются блокировкой его ячейки
+ * в ConcurrentHashMap, так что лайки разных фильмов не конкурируют за общий монитор.
+ * FilmService меняет счет под блокировкой фильма из {@link FilmLocks} вместе с записью лайка в базу данных,
+ * поэтому каждое изменение счета соответствует одной записанной строке и счет не уходит в минус.
+ * Перестроение держит все {@link FilmLocks}, поэтому лайки, записанные в базу данных во время него,
+ * попадают в новый рейтинг ровно один раз.
+ */
+@Component
+@Slf4j
+public class FilmLeaderboard {
+
+    private static final Comparator<FilmScore> MOST_LIKED_FIRST = Comparator
+            .comparingInt(FilmScore::getLikes).reversed()
+            .thenComparingInt(FilmScore::getFilmId);
+
+    private final FilmStorage filmStorage;
+    private final FilmLocks filmLocks;
+    private volatile Ranking ranking = new Ranking();
+
+    @Autowired
+    public FilmLeaderboard(@Qualifier("writeBehindFilmStorage") FilmStorage filmStorage, FilmLocks filmLocks) {
+        this.filmStorage = filmStorage;
+        this.filmLocks = filmLocks;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        filmLocks.withAllLocks(() -> {
+            Ranking rebuiltRanking = new Ranking();
+            filmStorage.getLikesCountByFilm().forEach((filmId, likes) -> rebuiltRanking.set(filmId, likes));
+            ranking = rebuiltRanking;
+            log.info("Рейтинг фильмов по лайкам построен по {} фильмам", rebuiltRanking.scores.size());
+        });
+    }
+
+    public boolean isConsistentWithStorage() {
+        Map<Integer, Integer> storedLikes = filmStorage.getLikesCountByFilm();
+        Map<Integer, FilmScore> scores = ranking.scores;
+        boolean isConsistent = storedLikes.size() == scores.size();
+
+        for (Map.Entry<Integer, Integer> storedFilm : storedLikes.entrySet()) {
+            FilmScore score = scores.get(storedFilm.getKey());
+            if (score == null || score.getLikes() != storedFilm.getValue()) {
+                log.warn("Рейтинг фильма ID {} расходится с базой данных: в памяти {}, в базе данных {} лайков",
+                        storedFilm.getKey(), score, storedFilm.getValue());
+                isConsistent = false;
+            }
+        }
+        return isConsistent;
+    }
+
+    public void addFilm(final Integer filmId) {
+        ranking.change(filmId, 0);
+    }
+
+    public int incrementLikes(final Integer filmId) {
+        return ranking.change(filmId, 1);
+    }
+
+    public int decrementLikes(final Integer filmId) {
+        return ranking.change(filmId, -1);
+    }
+
+    public boolean containsFilm(final Integer filmId) {
+        return ranking.scores.containsKey(filmId);
+    }
+
+    public int getLikesCount(final Integer filmId) {
+        FilmScore score = ranking.scores.get(filmId);
+        return score == null ? 0 : score.getLikes();
+    }
+
+    public List<Integer> getTopFilmIds(final int count) {
+        List<Integer> topFilmIds = new ArrayList<>(Math.min(count, ranking.scores.size()));
+        Set<Integer> seenFilmIds = new HashSet<>();
+        Iterator<FilmScore> iterator = ranking.ordered.iterator();
+
+        // во время изменения фильм может ненадолго присутствовать в рейтинге дважды: со старым и новым счетом
+        while (topFilmIds.size() < count && iterator.hasNext()) {
+            Integer filmId = iterator.next().getFilmId();
+            if (seenFilmIds.add(filmId)) {
+                topFilmIds.add(filmId);
+            }
+        }
+        return topFilmIds;
+    }
+
+    @Value
+    private static class FilmScore {
+        int filmId;
+        int likes;
+    }
+
+    private static class Ranking {
+
+        private final ConcurrentHashMap<Integer, FilmScore> scores = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<FilmScore> ordered = new ConcurrentSkipListSet<>(MOST_LIKED_FIRST);
+
+        private void set(final Integer filmId, final int likes) {
+            FilmScore score = new FilmScore(filmId, likes);
+            scores.put(filmId, score);
+            ordered.add(score);
+        }
+
+        private int change(final Integer filmId, final int delta) {
+            return scores.compute(filmId, (id, oldScore) -> {
+                FilmScore newScore = new FilmScore(id, oldScore == null ? delta : oldScore.getLikes() + delta);
+                ordered.add(newScore);
+                if (oldScore != null && !oldScore.equals(newScore)) {
+                    ordered.remove(oldScore);
+                }
+                return newScore;
+            }).getLikes();
+        }
+    }
+}
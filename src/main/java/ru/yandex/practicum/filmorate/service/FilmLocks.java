@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Блокировки фильмов: изменение лайков держит блокировку фильма от записи в базу данных до обновления
+ * рейтинга и индексов в памяти, а их перестроение берет все блокировки, поэтому изменения не теряются
+ * и не учитываются дважды.
+ */
+@Component
+public class FilmLocks extends StripedLocks {
+
+    private static final int STRIPES = 256;
+
+    public FilmLocks() {
+        super(STRIPES);
+    }
+}
@@ -0,0 +1,374 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Рекомендации фильмов по совместным лайкам (item-item): фильмы похожи, если их лайкают одни и те же пользователи,
+ * сходство - косинус co / sqrt(likes(a) * likes(b)). Разреженная матрица совместных лайков строится при старте
+ * параллельно по частям каталога и обновляется на каждый лайк. Ближайшие соседи фильма считаются лениво
+ * и сбрасываются при изменении его строки, поэтому рекомендация читает только строки соседей лайкнутых фильмов.
+ * Глобальной блокировки нет: лайки одного пользователя упорядочены {@link ConcurrentHashMap#compute} по его ID,
+ * строка матрицы - таблица int -> int {@link IntCountMap} со своим монитором, а перестроение берет все
+ * блокировки {@link FilmLocks}.
+ */
+@Component
+@Slf4j
+public class FilmRecommender {
+
+    private static final int MAX_NEIGHBORS = 50;
+    private static final int MAX_SEED_FILMS = 200;
+    private static final int FILMS_PER_TASK = 256;
+    private static final int[] EMPTY = new int[0];
+
+    private final FilmStorage filmStorage;
+    private final FilmLocks filmLocks;
+    private volatile CoLikes coLikes = new CoLikes();
+
+    @Autowired
+    public FilmRecommender(@Qualifier("writeBehindFilmStorage") FilmStorage filmStorage, FilmLocks filmLocks) {
+        this.filmStorage = filmStorage;
+        this.filmLocks = filmLocks;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        filmLocks.withAllLocks(() -> coLikes = loadFromStorage());
+        log.info("Матрица совместных лайков построена по {} фильмам", coLikes.rows.size());
+    }
+
+    public boolean isConsistentWithStorage() {
+        CoLikes stored = loadFromStorage();
+        CoLikes current = coLikes;
+        boolean isConsistent = stored.likesCount.equals(current.likesCount);
+
+        for (Integer filmId : union(stored.rows.keySet(), current.rows.keySet())) {
+            Map<Integer, Integer> storedRow = stored.rows.getOrDefault(filmId, IntCountMap.EMPTY_MAP).toMap();
+            Map<Integer, Integer> currentRow = current.rows.getOrDefault(filmId, IntCountMap.EMPTY_MAP).toMap();
+            if (!storedRow.equals(currentRow)) {
+                log.warn("Совместные лайки фильма ID {} расходятся с базой данных: в памяти {}, в базе данных {}",
+                        filmId, currentRow, storedRow);
+                isConsistent = false;
+            }
+        }
+        return isConsistent;
+    }
+
+    public void addLike(final int userId, final int filmId) {
+        CoLikes current = coLikes;
+        current.likesByUser.compute(userId, (id, userLikes) -> {
+            int[] likes = userLikes != null ? userLikes : EMPTY;
+            if (Arrays.binarySearch(likes, filmId) >= 0) {
+                return userLikes;
+            }
+
+            changeCoLikes(current, likes, filmId, 1);
+            current.likesCount.merge(filmId, 1, Integer::sum);
+            current.invalidateNeighbors(filmId);
+            SortedIntSet changedLikes = SortedIntSet.of(likes);
+            changedLikes.addInt(filmId);
+            return changedLikes.toIntArray();
+        });
+    }
+
+    public void removeLike(final int userId, final int filmId) {
+        CoLikes current = coLikes;
+        current.likesByUser.computeIfPresent(userId, (id, userLikes) -> {
+            if (Arrays.binarySearch(userLikes, filmId) < 0) {
+                return userLikes;
+            }
+
+            SortedIntSet changedLikes = SortedIntSet.of(userLikes);
+            changedLikes.removeInt(filmId);
+            int[] otherLikes = changedLikes.toIntArray();
+            changeCoLikes(current, otherLikes, filmId, -1);
+            current.likesCount.computeIfPresent(filmId, (likedFilmId, likes) -> likes > 1 ? likes - 1 : null);
+            current.invalidateNeighbors(filmId);
+            for (int otherFilmId : otherLikes) {
+                current.neighbors.remove(otherFilmId);
+            }
+            return otherLikes;
+        });
+    }
+
+    /**
+     * До limit фильмов, которые пользователь еще не лайкал, по убыванию суммы сходств с его лайкнутыми фильмами.
+     */
+    public List<Integer> getRecommendedFilmIds(final int userId, final int limit) {
+        CoLikes current = coLikes;
+        int[] userLikes = current.likesByUser.getOrDefault(userId, EMPTY);
+        Map<Integer, Double> scores = new HashMap<>();
+
+        for (int i = 0; i < Math.min(userLikes.length, MAX_SEED_FILMS); i++) {
+            Neighbors neighbors = current.neighbors(userLikes[i]);
+            for (int j = 0; j < neighbors.filmIds.length; j++) {
+                int candidateId = neighbors.filmIds[j];
+                if (Arrays.binarySearch(userLikes, candidateId) < 0) {
+                    scores.merge(candidateId, neighbors.similarities[j], Double::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<Integer, Double>> candidates = new ArrayList<>(scores.entrySet());
+        candidates.sort(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<Integer> recommendedFilmIds = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < Math.min(limit, candidates.size()); i++) {
+            recommendedFilmIds.add(candidates.get(i).getKey());
+        }
+        return recommendedFilmIds;
+    }
+
+    private void changeCoLikes(final CoLikes current, final int[] otherLikes, final int filmId, final int delta) {
+        IntCountMap row = current.rows.computeIfAbsent(filmId, id -> new IntCountMap());
+        for (int otherFilmId : otherLikes) {
+            if (otherFilmId == filmId) {
+                continue;
+            }
+            row.add(otherFilmId, delta);
+            current.rows.computeIfAbsent(otherFilmId, id -> new IntCountMap()).add(filmId, delta);
+        }
+    }
+
+    private CoLikes loadFromStorage() {
+        Map<Integer, SortedIntSet> likesByUser = new HashMap<>();
+        Map<Integer, SortedIntSet> likersByFilm = new HashMap<>();
+        filmStorage.exportLikes((userId, filmId) -> {
+            likesByUser.computeIfAbsent(userId, id -> new SortedIntSet()).addInt(filmId);
+            likersByFilm.computeIfAbsent(filmId, id -> new SortedIntSet()).addInt(userId);
+        });
+
+        CoLikes loaded = new CoLikes();
+        likesByUser.forEach((userId, likes) -> loaded.likesByUser.put(userId, likes.toIntArray()));
+        likersByFilm.forEach((filmId, likers) -> loaded.likesCount.put(filmId, likers.size()));
+
+        int[] filmIds = likersByFilm.keySet().stream().mapToInt(Integer::intValue).toArray();
+        ForkJoinPool.commonPool().invoke(new CoLikesTask(loaded, likersByFilm, filmIds, 0, filmIds.length));
+        return loaded;
+    }
+
+    private static Set<Integer> union(final Set<Integer> first, final Set<Integer> second) {
+        Set<Integer> union = new HashSet<>(first);
+        union.addAll(second);
+        return union;
+    }
+
+    /**
+     * Считает строки матрицы для своей части фильмов: каждая задача пишет только строки своих фильмов,
+     * поэтому задачи не конкурируют между собой.
+     */
+    private static class CoLikesTask extends RecursiveAction {
+
+        private final CoLikes coLikes;
+        private final Map<Integer, SortedIntSet> likersByFilm;
+        private final int[] filmIds;
+        private final int from;
+        private final int to;
+
+        private CoLikesTask(final CoLikes coLikes, final Map<Integer, SortedIntSet> likersByFilm,
+                            final int[] filmIds, final int from, final int to) {
+            this.coLikes = coLikes;
+            this.likersByFilm = likersByFilm;
+            this.filmIds = filmIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CoLikesTask(coLikes, likersByFilm, filmIds, from, middle),
+                        new CoLikesTask(coLikes, likersByFilm, filmIds, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                int filmId = filmIds[i];
+                IntCountMap row = new IntCountMap();
+                for (int userId : likersByFilm.get(filmId).toIntArray()) {
+                    for (int otherFilmId : coLikes.likesByUser.get(userId)) {
+                        if (otherFilmId != filmId) {
+                            row.add(otherFilmId, 1);
+                        }
+                    }
+                }
+                coLikes.rows.put(filmId, row);
+            }
+        }
+    }
+
+    private static class Neighbors {
+
+        private final int[] filmIds;
+        private final double[] similarities;
+
+        private Neighbors(final int[] filmIds, final double[] similarities) {
+            this.filmIds = filmIds;
+            this.similarities = similarities;
+        }
+    }
+
+    private static class CoLikes {
+
+        private final Map<Integer, int[]> likesByUser = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> likesCount = new ConcurrentHashMap<>();
+        private final Map<Integer, IntCountMap> rows = new ConcurrentHashMap<>();
+        private final Map<Integer, Neighbors> neighbors = new ConcurrentHashMap<>();
+
+        /**
+         * Соседи считаются внутри computeIfAbsent: сброс той же записи ждет окончания расчета,
+         * поэтому устаревшие соседи не переживают изменение строки.
+         */
+        private Neighbors neighbors(final int filmId) {
+            return neighbors.computeIfAbsent(filmId, this::computeNeighbors);
+        }
+
+        private Neighbors computeNeighbors(final int filmId) {
+            IntCountMap row = rows.getOrDefault(filmId, IntCountMap.EMPTY_MAP);
+            int filmLikes = likesCount.getOrDefault(filmId, 0);
+            List<Map.Entry<Integer, Double>> similarFilms = new ArrayList<>();
+
+            row.forEach((otherFilmId, count) -> {
+                int otherFilmLikes = likesCount.getOrDefault(otherFilmId, 0);
+                if (count > 0 && filmLikes > 0 && otherFilmLikes > 0) {
+                    similarFilms.add(Map.entry(otherFilmId, count / Math.sqrt((double) filmLikes * otherFilmLikes)));
+                }
+            });
+            similarFilms.sort(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+
+            int size = Math.min(MAX_NEIGHBORS, similarFilms.size());
+            int[] filmIds = new int[size];
+            double[] similarities = new double[size];
+            for (int i = 0; i < size; i++) {
+                filmIds[i] = similarFilms.get(i).getKey();
+                similarities[i] = similarFilms.get(i).getValue();
+            }
+            return new Neighbors(filmIds, similarities);
+        }
+
+        /**
+         * Лайк меняет строку фильма и число его лайков, а значит и сходство со всеми фильмами его строки.
+         * Фильмы, совместный счет с которыми упал до нуля, из строки уже удалены, их сбрасывает вызывающий.
+         * Соседи сбрасываются по копии ключей, а не под монитором строки: расчет соседей держит запись
+         * neighbors и читает строку, поэтому обратный порядок блокировок привел бы к взаимной блокировке.
+         */
+        private void invalidateNeighbors(final int filmId) {
+            neighbors.remove(filmId);
+            for (int otherFilmId : rows.getOrDefault(filmId, IntCountMap.EMPTY_MAP).keys()) {
+                neighbors.remove(otherFilmId);
+            }
+        }
+    }
+
+    /**
+     * Строка матрицы: счетчики int -> int с открытой адресацией и линейным пробированием, без упаковки
+     * в Integer. Нулевой счетчик означает пустую ячейку, поэтому счетчик, упавший до нуля, удаляется сдвигом
+     * следующих ячеек назад. Методы синхронизированы на самой строке, изменения разных строк не ждут друг друга.
+     */
+    private static final class IntCountMap {
+
+        private static final IntCountMap EMPTY_MAP = new IntCountMap();
+        private static final int INITIAL_CAPACITY = 8;
+
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private int[] counts = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private synchronized void add(final int key, final int delta) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (counts[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (counts[slot] == 0) {
+                keys[slot] = key;
+                counts[slot] = delta;
+                if (++size * 2 > keys.length) {
+                    resize();
+                }
+            } else if ((counts[slot] += delta) == 0) {
+                remove(slot, mask);
+            }
+        }
+
+        private synchronized int[] keys() {
+            int[] presentKeys = new int[size];
+            int count = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] != 0) {
+                    presentKeys[count++] = keys[slot];
+                }
+            }
+            return presentKeys;
+        }
+
+        private synchronized void forEach(final EntryConsumer consumer) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] != 0) {
+                    consumer.accept(keys[slot], counts[slot]);
+                }
+            }
+        }
+
+        private Map<Integer, Integer> toMap() {
+            Map<Integer, Integer> map = new HashMap<>();
+            forEach(map::put);
+            return map;
+        }
+
+        private void remove(int slot, final int mask) {
+            size--;
+            int next = (slot + 1) & mask;
+            while (counts[next] != 0) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+            counts[slot] = 0;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (counts[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slot(final int key, final int mask) {
+            return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+        }
+
+        private interface EntryConsumer {
+
+            void accept(int key, int count);
+        }
+    }
+}
@@ -4,19 +4,24 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.IncorrectParameterException;
-import ru.yandex.practicum.filmorate.exceptions.LikeException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,56 +29,142 @@ import java.util.stream.Collectors;
 public class FilmService {
 
     private static final LocalDate FIRST_FILM_DATE = LocalDate.parse("1895-12-28");
+    /**
+     * Размер части пакетных операций: совпадает с размером транзакции FilmDbStorage, поэтому индексы
+     * в памяти обновляются сразу после фиксации каждой транзакции и не теряют уже записанные части,
+     * если следующая часть завершится ошибкой.
+     */
+    private static final int MAX_ROWS_PER_CHUNK = 1000;
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final FilmLeaderboard filmLeaderboard;
+    private final FilmRecommender filmRecommender;
+    private final FilmSimilarityIndex filmSimilarityIndex;
+    private final FilmLocks filmLocks;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage) {
+    public FilmService(@Qualifier("cachingFilmStorage") FilmStorage filmStorage,
+                       @Qualifier("userDbStorage") UserStorage userStorage,
+                       FilmLeaderboard filmLeaderboard,
+                       FilmRecommender filmRecommender,
+                       FilmSimilarityIndex filmSimilarityIndex,
+                       FilmLocks filmLocks) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.filmLeaderboard = filmLeaderboard;
+        this.filmRecommender = filmRecommender;
+        this.filmSimilarityIndex = filmSimilarityIndex;
+        this.filmLocks = filmLocks;
     }
 
+    /**
+     * Лайки из тела запроса не сохраняются, поэтому новый фильм возвращается и индексируется без них.
+     */
     public Film add(final Film film) {
         isValidFilm(film);
-        return filmStorage.add(film);
+        film.setUsersLikes(new SortedIntSet());
+        Film addedFilm = filmStorage.add(film);
+        return filmLocks.withLock(addedFilm.getId(), () -> {
+            filmLeaderboard.addFilm(addedFilm.getId());
+            filmSimilarityIndex.updateFilm(addedFilm);
+            return addedFilm;
+        });
+    }
+
+    public List<Integer> addFilms(final List<Film> films) {
+        films.forEach(this::isValidFilm);
+        films.forEach(film -> film.setUsersLikes(new SortedIntSet()));
+        List<Integer> filmIds = new ArrayList<>(films.size());
+
+        for (int from = 0; from < films.size(); from += MAX_ROWS_PER_CHUNK) {
+            List<Film> chunk = films.subList(from, Math.min(from + MAX_ROWS_PER_CHUNK, films.size()));
+            List<Integer> chunkFilmIds = filmStorage.addFilms(chunk);
+            filmLocks.withLocks(chunkFilmIds, () -> {
+                for (Film film : chunk) {
+                    filmLeaderboard.addFilm(film.getId());
+                    filmSimilarityIndex.updateFilm(film);
+                }
+                return null;
+            });
+            filmIds.addAll(chunkFilmIds);
+        }
+        return filmIds;
     }
 
     public Film updateFilm(final Film film) {
         isValidFilm(film);
-        return filmStorage.update(film);
+        return filmLocks.withLock(film.getId(), () -> {
+            Film updatedFilm = filmStorage.update(film);
+            filmSimilarityIndex.updateGenres(updatedFilm.getId(), updatedFilm.getGenres());
+            return updatedFilm;
+        });
     }
 
     public List<Film> getAllFilms() {
         return filmStorage.getAllFilms();
     }
 
-    public List<Integer> addLike(final Integer filmId, final Integer userId) {
-        Film film = filmStorage.getFilmById(filmId);
-
-        if (!userStorage.isUserExist(userId)) {
-            throw new UserNotFoundException("Пользователь не найден: " + userId);
-        }
-
-        if (film.getUsersLikes().contains(userId)) {
-            throw new LikeException("Пользователь с ID:" + userId + "уже поставил лайк этому фильму");
-        }
+    public Page<Film> getFilmsPage(final Integer limit, final String afterCursor) {
+        PageCursor.checkLimit(limit);
+        return PageCursor.toPage(filmStorage.getFilmsPage(PageCursor.decode(afterCursor), limit), limit, Film::getId);
+    }
 
-        film.getUsersLikes().add(userId);
-        filmStorage.addUserLikeToFilm(userId, filmId);
-        return new ArrayList<>(film.getUsersLikes());
+    public void exportFilms(final Consumer<Film> filmConsumer) {
+        filmStorage.exportFilms(filmConsumer);
     }
 
-    public List<Integer> removeLike(final Integer filmId, final Integer userId) {
-        Film film = filmStorage.getFilmById(filmId);
+    /**
+     * Идемпотентно ставит лайк и возвращает новое количество лайков фильма. Фильм не загружается:
+     * пользователя проверяет внешний ключ в базе данных, а фильм - рейтинг в памяти.
+     * Запись в базу данных и обновление индексов идут под блокировкой фильма из {@link FilmLocks}.
+     */
+    public int addLike(final Integer filmId, final Integer userId) {
+        checkFilmExist(filmId);
+
+        return filmLocks.withLock(filmId, () -> {
+            if (!filmStorage.addUserLikeToFilm(userId, filmId)) {
+                return filmLeaderboard.getLikesCount(filmId);
+            }
+            filmRecommender.addLike(userId, filmId);
+            filmSimilarityIndex.addLike(userId, filmId);
+            return filmLeaderboard.incrementLikes(filmId);
+        });
+    }
 
-        if (!film.getUsersLikes().contains(userId)) {
-            throw new LikeException("Лайк пользователя не найден по данному фильму");
+    /**
+     * Лайки пишутся частями по {@link #MAX_ROWS_PER_CHUNK}: каждая часть держит блокировки своих фильмов
+     * от транзакции до обновления индексов, как и одиночный лайк.
+     */
+    public List<FilmLike> addLikes(final List<FilmLike> likes) {
+        List<FilmLike> addedLikes = new ArrayList<>();
+
+        for (int from = 0; from < likes.size(); from += MAX_ROWS_PER_CHUNK) {
+            List<FilmLike> chunk = likes.subList(from, Math.min(from + MAX_ROWS_PER_CHUNK, likes.size()));
+            Set<Integer> filmIds = chunk.stream().map(FilmLike::getFilmId).collect(Collectors.toSet());
+            addedLikes.addAll(filmLocks.withLocks(filmIds, () -> {
+                List<FilmLike> addedChunk = filmStorage.addLikes(chunk);
+                for (FilmLike like : addedChunk) {
+                    filmLeaderboard.incrementLikes(like.getFilmId());
+                    filmRecommender.addLike(like.getUserId(), like.getFilmId());
+                    filmSimilarityIndex.addLike(like.getUserId(), like.getFilmId());
+                }
+                return addedChunk;
+            }));
         }
+        return addedLikes;
+    }
 
-        film.getUsersLikes().remove(userId);
-        filmStorage.removeUserLike(userId, filmId);
-        return new ArrayList<>(film.getUsersLikes());
+    public int removeLike(final Integer filmId, final Integer userId) {
+        checkFilmExist(filmId);
+
+        return filmLocks.withLock(filmId, () -> {
+            if (!filmStorage.removeUserLike(userId, filmId)) {
+                return filmLeaderboard.getLikesCount(filmId);
+            }
+            filmRecommender.removeLike(userId, filmId);
+            filmSimilarityIndex.removeLike(userId, filmId);
+            return filmLeaderboard.decrementLikes(filmId);
+        });
     }
 
     public List<Film> getPopularFilmsByLikes(final Integer numberOfFilms) {
@@ -82,10 +173,27 @@ public class FilmService {
                     + numberOfFilms);
         }
 
-        return filmStorage.getAllFilms().stream()
-                .sorted((film1, film2) -> (film1.getUsersLikes().size() - film2.getUsersLikes().size()) * -1)
-                .limit(numberOfFilms)
-                .collect(Collectors.toList());
+        return filmStorage.getFilmsByIds(filmLeaderboard.getTopFilmIds(numberOfFilms));
+    }
+
+    public List<Film> getRecommendedFilms(final Integer userId, final Integer count) {
+        if (count <= 0) {
+            throw new IncorrectParameterException("Указано неверное количество рекомендуемых фильмов: " + count);
+        }
+        if (!userStorage.isUserExist(userId)) {
+            throw new UserNotFoundException("Пользователь не найден: " + userId);
+        }
+
+        return filmStorage.getFilmsByIds(filmRecommender.getRecommendedFilmIds(userId, count));
+    }
+
+    public List<Film> getSimilarFilms(final Integer filmId, final Integer count) {
+        if (count <= 0) {
+            throw new IncorrectParameterException("Указано неверное количество похожих фильмов: " + count);
+        }
+
+        checkFilmExist(filmId);
+        return filmStorage.getFilmsByIds(filmSimilarityIndex.getSimilarFilmIds(filmId, count));
     }
 
     public Film getFilmById(final Integer filmId) {
@@ -108,6 +216,12 @@ public class FilmService {
         return filmStorage.getRatingById(ratingId);
     }
 
+    private void checkFilmExist(final Integer filmId) {
+        if (!filmLeaderboard.containsFilm(filmId)) {
+            throw new FilmNotFoundException("Фильм не найден: " + filmId);
+        }
+    }
+
     public void isValidFilm(Film film) {
         if (film.getReleaseDate().isBefore(FIRST_FILM_DATE)) {
             log.debug("Дата релиза фильма указана раньше 28 Декабря 1895 года: {}", film);
@@ -0,0 +1,293 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Поиск похожих фильмов по MinHash: признаки фильма - пользователи, поставившие лайк, и жанры (как -ID жанра),
+ * сходство - оценка коэффициента Жаккара по доле совпавших минимумов {@link #HASHES} хеш-функций.
+ * Кандидаты берутся из LSH-корзин: подпись делится на {@link #BANDS} полос, фильмы с совпавшей полосой
+ * попадают в одну корзину. В памяти у фильма только подпись и жанры, без списка лайкнувших: лайк обновляет
+ * подпись за O(HASHES), а фильм перечитывается из хранилища, только когда удаленный лайк или жанр давал минимум.
+ * Изменения фильма идут под его блокировкой из {@link FilmLocks}, перестроение - под всеми блокировками.
+ */
+@Component
+@Slf4j
+public class FilmSimilarityIndex {
+
+    private static final int HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS_PER_BAND = HASHES / BANDS;
+    private static final int MAX_CANDIDATES = 1000;
+    private static final int[] SEEDS = new SplittableRandom(20240411L).ints(HASHES).toArray();
+
+    private final FilmStorage filmStorage;
+    private final FilmLocks filmLocks;
+    private volatile Index index = new Index();
+
+    @Autowired
+    public FilmSimilarityIndex(@Qualifier("writeBehindFilmStorage") FilmStorage filmStorage, FilmLocks filmLocks) {
+        this.filmStorage = filmStorage;
+        this.filmLocks = filmLocks;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        filmLocks.withAllLocks(() -> {
+            Index rebuiltIndex = new Index();
+            filmStorage.exportFilms(film -> rebuiltIndex.put(film.getId(), toSketch(film)));
+            index = rebuiltIndex;
+            log.info("Индекс похожих фильмов построен по {} фильмам", rebuiltIndex.sketches.size());
+        });
+    }
+
+    public void updateFilm(final Film film) {
+        index.put(film.getId(), toSketch(film));
+    }
+
+    public void updateGenres(final int filmId, final Set<FilmGenre> genres) {
+        Index current = index;
+        FilmSketch sketch = current.sketches.get(filmId);
+        int[] genreIds = genreIds(genres);
+        if (sketch == null) {
+            reload(current, filmId);
+            return;
+        }
+        if (Arrays.equals(sketch.genreIds, genreIds)) {
+            return;
+        }
+
+        for (int genreId : sketch.genreIds) {
+            if (Arrays.binarySearch(genreIds, genreId) < 0 && holdsMinimum(sketch.signature, -genreId)) {
+                reload(current, filmId);
+                return;
+            }
+        }
+        int[] signature = sketch.signature == null ? emptySignature() : sketch.signature.clone();
+        for (int genreId : genreIds) {
+            addFeature(signature, -genreId);
+        }
+        current.put(filmId, new FilmSketch(genreIds.length == 0 && sketch.signature == null ? null : signature,
+                genreIds));
+    }
+
+    public void addLike(final int userId, final int filmId) {
+        Index current = index;
+        FilmSketch sketch = current.sketches.get(filmId);
+        if (sketch == null) {
+            reload(current, filmId);
+            return;
+        }
+
+        int[] signature = sketch.signature == null ? emptySignature() : sketch.signature.clone();
+        addFeature(signature, userId);
+        current.put(filmId, new FilmSketch(signature, sketch.genreIds));
+    }
+
+    /**
+     * Удаление лайка, который не давал ни одного минимума, подпись не меняет. Иначе новый минимум
+     * не восстановить без остальных признаков, и фильм перечитывается из хранилища.
+     */
+    public void removeLike(final int userId, final int filmId) {
+        Index current = index;
+        FilmSketch sketch = current.sketches.get(filmId);
+        if (sketch == null || holdsMinimum(sketch.signature, userId)) {
+            reload(current, filmId);
+        }
+    }
+
+    /**
+     * До limit фильмов по убыванию оценки сходства, затем по ID. Фильмы без общих признаков не возвращаются.
+     */
+    public List<Integer> getSimilarFilmIds(final int filmId, final int limit) {
+        Index current = index;
+        int[] signature = current.signature(filmId);
+        if (signature == null) {
+            return List.of();
+        }
+
+        Set<Integer> candidates = new HashSet<>();
+        bands:
+        for (int band = 0; band < BANDS; band++) {
+            for (Integer candidateId : current.buckets.getOrDefault(bandKey(band, signature), Set.of())) {
+                if (candidateId != filmId && candidates.add(candidateId) && candidates.size() == MAX_CANDIDATES) {
+                    break bands;
+                }
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> similarFilms = new ArrayList<>(candidates.size());
+        for (Integer candidateId : candidates) {
+            int[] candidateSignature = current.signature(candidateId);
+            int matches = candidateSignature == null ? 0 : countMatches(signature, candidateSignature);
+            if (matches > 0) {
+                similarFilms.add(Map.entry(candidateId, matches));
+            }
+        }
+        similarFilms.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        List<Integer> similarFilmIds = new ArrayList<>(Math.min(limit, similarFilms.size()));
+        for (int i = 0; i < Math.min(limit, similarFilms.size()); i++) {
+            similarFilmIds.add(similarFilms.get(i).getKey());
+        }
+        return similarFilmIds;
+    }
+
+    public double getEstimatedSimilarity(final int filmId, final int otherFilmId) {
+        Index current = index;
+        int[] signature = current.signature(filmId);
+        int[] otherSignature = current.signature(otherFilmId);
+        if (signature == null || otherSignature == null) {
+            return 0;
+        }
+        return (double) countMatches(signature, otherSignature) / HASHES;
+    }
+
+    private void reload(final Index current, final int filmId) {
+        current.put(filmId, toSketch(filmStorage.getFilmById(filmId)));
+    }
+
+    /**
+     * Фильм без признаков хранится без подписи: пустые подписи совпали бы у всех таких фильмов.
+     */
+    private static FilmSketch toSketch(final Film film) {
+        int[] genreIds = genreIds(film.getGenres());
+        if (genreIds.length == 0 && film.getUsersLikes().isEmpty()) {
+            return new FilmSketch(null, genreIds);
+        }
+
+        int[] signature = emptySignature();
+        for (Integer userId : film.getUsersLikes()) {
+            addFeature(signature, userId);
+        }
+        for (int genreId : genreIds) {
+            addFeature(signature, -genreId);
+        }
+        return new FilmSketch(signature, genreIds);
+    }
+
+    private static int[] genreIds(final Set<FilmGenre> genres) {
+        SortedIntSet genreIds = new SortedIntSet();
+        for (FilmGenre genre : genres) {
+            genreIds.addInt(genre.getId());
+        }
+        return genreIds.toIntArray();
+    }
+
+    private static int[] emptySignature() {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        return signature;
+    }
+
+    private static void addFeature(final int[] signature, final int feature) {
+        for (int i = 0; i < HASHES; i++) {
+            signature[i] = Math.min(signature[i], hash(i, feature));
+        }
+    }
+
+    private static boolean holdsMinimum(final int[] signature, final int feature) {
+        if (signature == null) {
+            return true;
+        }
+        for (int i = 0; i < HASHES; i++) {
+            if (signature[i] == hash(i, feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Перемешивание из финализатора MurmurHash3 с отдельным зерном на каждую хеш-функцию.
+     */
+    private static int hash(final int function, final int feature) {
+        int hash = feature ^ SEEDS[function];
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static long bandKey(final int band, final int[] signature) {
+        int hash = 1;
+        for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return (long) band << 32 | (hash & 0xffffffffL);
+    }
+
+    private static int countMatches(final int[] signature, final int[] otherSignature) {
+        int matches = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (signature[i] == otherSignature[i]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Подпись фильма и отсортированные ID его жанров.
+     */
+    private static class FilmSketch {
+
+        private final int[] signature;
+        private final int[] genreIds;
+
+        private FilmSketch(final int[] signature, final int[] genreIds) {
+            this.signature = signature;
+            this.genreIds = genreIds;
+        }
+    }
+
+    private static class Index {
+
+        private final Map<Integer, FilmSketch> sketches = new ConcurrentHashMap<>();
+        private final Map<Long, Set<Integer>> buckets = new ConcurrentHashMap<>();
+
+        private int[] signature(final int filmId) {
+            FilmSketch sketch = sketches.get(filmId);
+            return sketch == null ? null : sketch.signature;
+        }
+
+        private void put(final int filmId, final FilmSketch sketch) {
+            int[] oldSignature = signature(filmId);
+            sketches.put(filmId, sketch);
+
+            for (int band = 0; band < BANDS; band++) {
+                Long oldKey = oldSignature == null ? null : bandKey(band, oldSignature);
+                Long newKey = sketch.signature == null ? null : bandKey(band, sketch.signature);
+                if (Objects.equals(oldKey, newKey)) {
+                    continue;
+                }
+                if (newKey != null) {
+                    buckets.compute(newKey, (key, bucket) -> {
+                        Set<Integer> keyBucket = bucket == null ? ConcurrentHashMap.newKeySet() : bucket;
+                        keyBucket.add(filmId);
+                        return keyBucket;
+                    });
+                }
+                if (oldKey != null) {
+                    buckets.computeIfPresent(oldKey, (key, bucket) -> {
+                        bucket.remove(filmId);
+                        return bucket.isEmpty() ? null : bucket;
+                    });
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Граф дружбы по таблице friends, который поддерживается в памяти.
+ * Связи хранятся в формате CSR: строка пользователя - отрезок массива edges от offsets[id] до offsets[id + 1],
+ * отсортированный по ID друга, каждая связь кодируется одним int как friendId << 1 | confirmed.
+ * Измененные строки лежат поверх основного массива, пока их не станет больше {@link #COMPACT_THRESHOLD},
+ * после чего граф уплотняется в новый массив. Чтение проходит без блокировок, изменение строки атомарно
+ * через {@link ConcurrentHashMap#compute}, так что изменения разных пользователей не ждут друг друга,
+ * а уплотнение ждет, пока закончатся начатые изменения. Перестроение из базы данных берет все блокировки
+ * {@link FriendshipLocks}, под которыми {@link UserService} пишет в базу данных и обновляет граф.
+ */
+@Component
+@Slf4j
+public class FriendshipGraph {
+
+    private static final int COMPACT_THRESHOLD = 4096;
+    private static final int BLOCK_SIZE = 256;
+    private static final int MAX_SUGGESTION_FRIENDS = 500;
+    private static final int MAX_SUGGESTION_FRIENDS_OF_FRIEND = 500;
+    private static final int[] EMPTY = new int[0];
+
+    private final UserStorage userStorage;
+    private final FriendshipLocks friendshipLocks;
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private volatile Adjacency adjacency = new Adjacency(new int[]{0}, EMPTY);
+
+    public enum Status {
+        NONE,
+        REQUESTED,
+        CONFIRMED
+    }
+
+    @Autowired
+    public FriendshipGraph(@Qualifier("userDbStorage") UserStorage userStorage, FriendshipLocks friendshipLocks) {
+        this.userStorage = userStorage;
+        this.friendshipLocks = friendshipLocks;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        friendshipLocks.withAllLocks(() -> {
+            compactionLock.writeLock().lock();
+            try {
+                adjacency = loadFromStorage();
+            } finally {
+                compactionLock.writeLock().unlock();
+            }
+        });
+        log.info("Граф дружбы построен по {} связям", adjacency.edges.length);
+    }
+
+    public boolean isConsistentWithStorage() {
+        Adjacency stored = loadFromStorage();
+        Adjacency current = adjacency;
+        int usersCount = Math.max(stored.usersCount(), current.maxUserId() + 1);
+        boolean isConsistent = true;
+
+        for (int userId = 0; userId < usersCount; userId++) {
+            if (!stored.row(userId).sameEdges(current.row(userId))) {
+                log.warn("Связи пользователя ID {} в графе дружбы расходятся с базой данных", userId);
+                isConsistent = false;
+            }
+        }
+        return isConsistent;
+    }
+
+    public void addFriendship(final int userId, final int friendId, final boolean confirmed) {
+        int edge = friendId << 1 | (confirmed ? 1 : 0);
+        changeRow(userId, row -> {
+            int index = row.indexOf(friendId);
+            return index >= 0 ? row.withEdge(index, edge) : row.withInsertedEdge(-index - 1, edge);
+        });
+    }
+
+    public void removeFriendship(final int userId, final int friendId) {
+        changeRow(userId, row -> {
+            int index = row.indexOf(friendId);
+            return index >= 0 ? row.withoutEdge(index) : row;
+        });
+    }
+
+    public Status getStatus(final int userId, final int friendId) {
+        Row row = adjacency.row(userId);
+        int index = row.indexOf(friendId);
+        if (index < 0) {
+            return Status.NONE;
+        }
+        return (row.edge(index) & 1) == 1 ? Status.CONFIRMED : Status.REQUESTED;
+    }
+
+    public int[] getFriendIds(final int userId) {
+        return adjacency.row(userId).friendIds(true, 0, Integer.MAX_VALUE);
+    }
+
+    public int[] getFriendIdsPage(final int userId, final int afterFriendId, final int limit) {
+        return adjacency.row(userId).friendIds(true, afterFriendId, limit);
+    }
+
+    public int[] getFriendRequestIds(final int userId) {
+        return adjacency.row(userId).friendIds(false, 0, Integer.MAX_VALUE);
+    }
+
+    public int[] getCommonFriendIds(final int userId, final int otherUserId) {
+        Adjacency current = adjacency;
+        return current.row(userId).commonFriendIds(current.row(otherUserId));
+    }
+
+    /**
+     * Друзья друзей пользователя, упорядоченные по убыванию числа общих друзей, затем по ID.
+     * У пользователей с большим числом друзей обход ограничен: берется не больше
+     * {@link #MAX_SUGGESTION_FRIENDS} друзей и по {@link #MAX_SUGGESTION_FRIENDS_OF_FRIEND} их друзей,
+     * выбранных равномерно по строке, поэтому время ответа не зависит от степени вершин.
+     */
+    public int[] getSuggestedFriendIds(final int userId, final int limit) {
+        Adjacency current = adjacency;
+        Row userRow = current.row(userId);
+        int[] friendIds = userRow.sample(MAX_SUGGESTION_FRIENDS);
+        int[] candidates = new int[16];
+        int candidatesCount = 0;
+
+        for (int friendId : friendIds) {
+            for (int candidateId : current.row(friendId).sample(MAX_SUGGESTION_FRIENDS_OF_FRIEND)) {
+                if (candidatesCount == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, candidates.length * 2);
+                }
+                candidates[candidatesCount++] = candidateId;
+            }
+        }
+        Arrays.sort(candidates, 0, candidatesCount);
+
+        TopCandidates topCandidates = new TopCandidates(limit);
+        for (int from = 0; from < candidatesCount; ) {
+            int candidateId = candidates[from];
+            int to = from;
+            while (to < candidatesCount && candidates[to] == candidateId) {
+                to++;
+            }
+            if (candidateId != userId && userRow.indexOf(candidateId) < 0) {
+                topCandidates.offer(candidateId, to - from);
+            }
+            from = to;
+        }
+        return topCandidates.toSortedIds();
+    }
+
+    /**
+     * Заменяет строку пользователя результатом change. Строка, которая не изменилась, в измененные не попадает.
+     */
+    private void changeRow(final int userId, final UnaryOperator<Row> change) {
+        Adjacency current;
+        compactionLock.readLock().lock();
+        try {
+            current = adjacency;
+            current.changedRows.compute(userId, (id, changedRow) -> {
+                Row row = changedRow != null ? changedRow : current.row(id);
+                Row changed = change.apply(row);
+                return changed == row && changedRow == null ? null : changed;
+            });
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        if (current.changedRows.size() > COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        compactionLock.writeLock().lock();
+        try {
+            Adjacency current = adjacency;
+            if (current.changedRows.size() > COMPACT_THRESHOLD) {
+                adjacency = current.compact();
+                log.debug("Граф дружбы уплотнен до {} связей", adjacency.edges.length);
+            }
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    private Adjacency loadFromStorage() {
+        AdjacencyBuilder builder = new AdjacencyBuilder();
+        userStorage.exportFriendships(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Строка пользователя из блоков связей, отсортированных по ID друга. Строка основного массива - один блок,
+     * отрезок edges. Измененная строка разбита на блоки не длиннее 2 * {@link #BLOCK_SIZE}: изменение связи
+     * копирует один блок и массив ссылок на блоки, а не всю строку, поэтому добавление друзей пользователю
+     * с большим числом друзей стоит O(BLOCK_SIZE + степень / BLOCK_SIZE), а не O(степень).
+     */
+    private static final class Row {
+
+        private static final Row EMPTY_ROW = new Row(new int[0][], EMPTY, new int[]{0});
+
+        private final int[][] blocks;
+        private final int[] froms;
+        private final int[] starts;
+
+        private Row(final int[][] blocks, final int[] froms, final int[] starts) {
+            this.blocks = blocks;
+            this.froms = froms;
+            this.starts = starts;
+        }
+
+        private static Row slice(final int[] edges, final int from, final int to) {
+            return from == to ? EMPTY_ROW : new Row(new int[][]{edges}, new int[]{from}, new int[]{0, to - from});
+        }
+
+        private int size() {
+            return starts[blocks.length];
+        }
+
+        private int edge(final int index) {
+            int block = blocks.length == 1 ? 0 : blockOf(index);
+            return blocks[block][froms[block] + index - starts[block]];
+        }
+
+        /**
+         * Блок, в котором лежит связь с индексом index, для index == size() - последний блок.
+         */
+        private int blockOf(final int index) {
+            int low = 0;
+            int high = blocks.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private int indexOf(final int friendId) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleId = edge(middle) >>> 1;
+                if (middleId < friendId) {
+                    low = middle + 1;
+                } else if (middleId > friendId) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        private Row withEdge(final int index, final int edge) {
+            Row row = toBlocks();
+            int block = row.blockOf(index);
+            int[] edges = row.blocks[block].clone();
+            edges[index - row.starts[block]] = edge;
+            return row.withBlock(block, edges);
+        }
+
+        private Row withInsertedEdge(final int index, final int edge) {
+            Row row = toBlocks();
+            if (row.blocks.length == 0) {
+                return new Row(new int[][]{{edge}}, new int[1], new int[]{0, 1});
+            }
+            int block = row.blockOf(index);
+            int[] source = row.blocks[block];
+            int insertAt = index - row.starts[block];
+            int[] edges = new int[source.length + 1];
+            System.arraycopy(source, 0, edges, 0, insertAt);
+            edges[insertAt] = edge;
+            System.arraycopy(source, insertAt, edges, insertAt + 1, source.length - insertAt);
+
+            if (edges.length <= 2 * BLOCK_SIZE) {
+                return row.withBlock(block, edges);
+            }
+            return row.withBlock(block, Arrays.copyOf(edges, BLOCK_SIZE),
+                    Arrays.copyOfRange(edges, BLOCK_SIZE, edges.length));
+        }
+
+        private Row withoutEdge(final int index) {
+            Row row = toBlocks();
+            int block = row.blockOf(index);
+            int[] source = row.blocks[block];
+            int removeAt = index - row.starts[block];
+            int[] edges = new int[source.length - 1];
+            System.arraycopy(source, 0, edges, 0, removeAt);
+            System.arraycopy(source, removeAt + 1, edges, removeAt, edges.length - removeAt);
+            return edges.length == 0 ? row.withBlock(block) : row.withBlock(block, edges);
+        }
+
+        /**
+         * Копия строки, в которой блок с номером block заменен блоками replacements.
+         */
+        private Row withBlock(final int block, final int[]... replacements) {
+            int count = blocks.length - 1 + replacements.length;
+            int[][] newBlocks = new int[count][];
+            System.arraycopy(blocks, 0, newBlocks, 0, block);
+            System.arraycopy(replacements, 0, newBlocks, block, replacements.length);
+            System.arraycopy(blocks, block + 1, newBlocks, block + replacements.length, blocks.length - block - 1);
+
+            int[] newStarts = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                newStarts[i + 1] = newStarts[i] + newBlocks[i].length;
+            }
+            return new Row(newBlocks, new int[count], newStarts);
+        }
+
+        /**
+         * Разбивает отрезок основного массива на блоки по {@link #BLOCK_SIZE} связей, каждый блок - отдельный
+         * массив. Строка, которая уже состоит из таких блоков, возвращается как есть.
+         */
+        private Row toBlocks() {
+            int size = size();
+            if (blocks.length != 1 || blocks[0].length == size && size <= 2 * BLOCK_SIZE) {
+                return this;
+            }
+            int count = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int[][] newBlocks = new int[count][];
+            int[] newStarts = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                newStarts[i + 1] = Math.min(size, newStarts[i] + BLOCK_SIZE);
+                newBlocks[i] = Arrays.copyOfRange(blocks[0], froms[0] + newStarts[i], froms[0] + newStarts[i + 1]);
+            }
+            return new Row(newBlocks, new int[count], newStarts);
+        }
+
+        private int[] friendIds(final boolean confirmed, final int afterFriendId, final int limit) {
+            int index = indexOf(afterFriendId);
+            int start = index >= 0 ? index + 1 : -index - 1;
+            int size = size();
+            int flag = confirmed ? 1 : 0;
+            int[] friendIds = new int[Math.min(size - start, limit)];
+            int count = 0;
+
+            for (int i = start; i < size && count < friendIds.length; i++) {
+                int edge = edge(i);
+                if ((edge & 1) == flag) {
+                    friendIds[count++] = edge >>> 1;
+                }
+            }
+            return count == friendIds.length ? friendIds : Arrays.copyOf(friendIds, count);
+        }
+
+        /**
+         * Не больше limit подтвержденных друзей, выбранных с равным шагом по строке.
+         */
+        private int[] sample(final int limit) {
+            int[] friendIds = friendIds(true, 0, Integer.MAX_VALUE);
+            if (friendIds.length <= limit) {
+                return friendIds;
+            }
+
+            int[] sampledIds = new int[limit];
+            for (int i = 0; i < limit; i++) {
+                sampledIds[i] = friendIds[(int) ((long) i * friendIds.length / limit)];
+            }
+            return sampledIds;
+        }
+
+        private int[] commonFriendIds(final Row other) {
+            int size = size();
+            int otherSize = other.size();
+            int[] commonIds = new int[Math.min(size, otherSize)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+
+            while (i < size && j < otherSize) {
+                int edge = edge(i);
+                int otherEdge = other.edge(j);
+                int friendId = edge >>> 1;
+                int otherFriendId = otherEdge >>> 1;
+                if (friendId < otherFriendId) {
+                    i++;
+                } else if (friendId > otherFriendId) {
+                    j++;
+                } else {
+                    if ((edge & otherEdge & 1) == 1) {
+                        commonIds[count++] = friendId;
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(commonIds, count);
+        }
+
+        private boolean sameEdges(final Row other) {
+            int size = size();
+            if (size != other.size()) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (edge(i) != other.edge(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Adjacency {
+
+        private final int[] offsets;
+        private final int[] edges;
+        private final Map<Integer, Row> changedRows = new ConcurrentHashMap<>();
+
+        private Adjacency(final int[] offsets, final int[] edges) {
+            this.offsets = offsets;
+            this.edges = edges;
+        }
+
+        private int usersCount() {
+            return offsets.length - 1;
+        }
+
+        private int maxUserId() {
+            int maxUserId = usersCount() - 1;
+            for (Integer userId : changedRows.keySet()) {
+                maxUserId = Math.max(maxUserId, userId);
+            }
+            return maxUserId;
+        }
+
+        private Row row(final int userId) {
+            Row changedRow = changedRows.get(userId);
+            if (changedRow != null) {
+                return changedRow;
+            }
+            if (userId < 0 || userId >= usersCount()) {
+                return Row.EMPTY_ROW;
+            }
+            return Row.slice(edges, offsets[userId], offsets[userId + 1]);
+        }
+
+        private Adjacency compact() {
+            int usersCount = maxUserId() + 1;
+            AdjacencyBuilder builder = new AdjacencyBuilder();
+
+            for (int userId = 0; userId < usersCount; userId++) {
+                Row row = row(userId);
+                for (int i = 0; i < row.size(); i++) {
+                    builder.addEdge(userId, row.edge(i));
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Куча на limit лучших кандидатов: ключ - число общих друзей в старших 32 битах и инвертированный ID в младших,
+     * так что при равном числе общих друзей выше стоит меньший ID. В корне лежит худший из отобранных.
+     */
+    private static class TopCandidates {
+
+        private final long[] heap;
+        private int size;
+
+        private TopCandidates(final int limit) {
+            this.heap = new long[limit];
+        }
+
+        private void offer(final int candidateId, final int mutualFriends) {
+            long key = (long) mutualFriends << 32 | (Integer.MAX_VALUE - candidateId);
+            if (size < heap.length) {
+                heap[size] = key;
+                siftUp(size++);
+            } else if (heap.length > 0 && key > heap[0]) {
+                heap[0] = key;
+                siftDown(0);
+            }
+        }
+
+        private int[] toSortedIds() {
+            long[] keys = Arrays.copyOf(heap, size);
+            Arrays.sort(keys);
+            int[] candidateIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                candidateIds[i] = Integer.MAX_VALUE - (int) keys[size - 1 - i];
+            }
+            return candidateIds;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent] <= heap[index]) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && heap[left] < heap[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && heap[right] < heap[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(smallest, index);
+                index = smallest;
+            }
+        }
+
+        private void swap(final int i, final int j) {
+            long key = heap[i];
+            heap[i] = heap[j];
+            heap[j] = key;
+        }
+    }
+
+    /**
+     * Собирает CSR из связей, отсортированных по ID пользователя и ID друга.
+     */
+    private static class AdjacencyBuilder {
+
+        private int[] offsets = new int[16];
+        private int[] edges = new int[16];
+        private int edgesCount;
+        private int usersCount;
+
+        private void add(final int userId, final int friendId, final boolean confirmed) {
+            addEdge(userId, friendId << 1 | (confirmed ? 1 : 0));
+        }
+
+        private void addEdge(final int userId, final int edge) {
+            closeRowsBefore(userId);
+            if (edgesCount == edges.length) {
+                edges = Arrays.copyOf(edges, edges.length + (edges.length >> 1));
+            }
+            edges[edgesCount++] = edge;
+        }
+
+        private void closeRowsBefore(final int userId) {
+            if (userId + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(userId + 2, offsets.length + (offsets.length >> 1)));
+            }
+            while (usersCount <= userId) {
+                offsets[++usersCount] = edgesCount;
+            }
+            offsets[usersCount] = edgesCount + 1;
+        }
+
+        private Adjacency build() {
+            return new Adjacency(Arrays.copyOf(offsets, usersCount + 1), Arrays.copyOf(edges, edgesCount));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Блокировки пар пользователей: изменение дружбы держит блокировку пары от записи в базу данных
+ * до обновления графа дружбы, а перестроение графа берет все блокировки.
+ */
+@Component
+public class FriendshipLocks extends StripedLocks {
+
+    private static final int STRIPES = 256;
+
+    public FriendshipLocks() {
+        super(STRIPES);
+    }
+
+    /**
+     * Блокировка не зависит от порядка ID, поэтому заявка и встречная заявка выполняются по очереди.
+     */
+    public <T> T withPairLock(final int userId, final int friendId, final Supplier<T> action) {
+        return withLock(31 * Math.min(userId, friendId) + Math.max(userId, friendId), action);
+    }
+}
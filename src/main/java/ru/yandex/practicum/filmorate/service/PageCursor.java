@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exceptions.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Непрозрачный курсор постраничной выдачи. Внутри хранится ID последней выданной записи,
+ * следующая страница запрашивается у хранилища условием "id > ?", поэтому ее стоимость не зависит от глубины.
+ */
+public final class PageCursor {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final String PREFIX = "after:";
+
+    private PageCursor() {
+    }
+
+    public static Integer decode(final String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(PREFIX)) {
+                throw new ValidationException("Неверный курсор страницы: " + cursor);
+            }
+            return Integer.valueOf(decoded.substring(PREFIX.length()));
+        } catch (IllegalArgumentException exception) {
+            throw new ValidationException("Неверный курсор страницы: " + cursor, exception);
+        }
+    }
+
+    public static String encode(final Integer lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void checkLimit(final Integer limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IncorrectParameterException("Указан неверный размер страницы: " + limit
+                    + ". Допустимо от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    public static <T> Page<T> toPage(final List<T> items, final Integer limit, final Function<T, Integer> idGetter) {
+        String nextCursor = items.size() < limit ? null : encode(idGetter.apply(items.get(items.size() - 1)));
+        return new Page<>(items, nextCursor);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Фиксированный набор блокировок, между которыми ключи распределяются по остатку от деления.
+ * Изменения с разными ключами почти всегда берут разные блокировки и не ждут друг друга, а перестроение
+ * индекса берет все блокировки сразу и видит базу данных без незавершенных изменений.
+ * Несколько блокировок всегда берутся по возрастанию номера, поэтому взаимных блокировок нет.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(final int stripes) {
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T withLock(final int key, final Supplier<T> action) {
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <T> T withLocks(final Collection<Integer> keys, final Supplier<T> action) {
+        boolean[] isLocked = new boolean[locks.length];
+        for (Integer key : keys) {
+            isLocked[stripe(key)] = true;
+        }
+        return withLocks(isLocked, action);
+    }
+
+    public void withAllLocks(final Runnable action) {
+        boolean[] isLocked = new boolean[locks.length];
+        Arrays.fill(isLocked, true);
+        withLocks(isLocked, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T withLocks(final boolean[] isLocked, final Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (; locked < locks.length; locked++) {
+                if (isLocked[locked]) {
+                    locks[locked].lock();
+                }
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (isLocked[i]) {
+                    locks[i].unlock();
+                }
+            }
+        }
+    }
+
+    private int stripe(final int key) {
+        return Math.floorMod(key, locks.length);
+    }
+}
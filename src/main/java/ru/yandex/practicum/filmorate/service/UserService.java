@@ -5,12 +5,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestBody;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import javax.validation.Valid;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -19,10 +24,15 @@ import java.util.stream.Collectors;
 public class UserService {
 
     private final UserStorage userStorage;
+    private final FriendshipGraph friendshipGraph;
+    private final FriendshipLocks friendshipLocks;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(@Qualifier("userDbStorage") UserStorage userStorage, FriendshipGraph friendshipGraph,
+                       FriendshipLocks friendshipLocks) {
         this.userStorage = userStorage;
+        this.friendshipGraph = friendshipGraph;
+        this.friendshipLocks = friendshipLocks;
     }
 
     public User addUser(@Valid @RequestBody User user) {
@@ -30,49 +40,57 @@ public class UserService {
         return userStorage.addUser(user);
     }
 
+    public List<Integer> addUsers(final List<User> users) {
+        users.forEach(this::isValidUser);
+        return userStorage.addUsers(users);
+    }
+
+    /**
+     * Друзья меняются только отдельными запросами, поэтому обновление профиля не трогает связи пользователя,
+     * а в ответе они берутся из графа дружбы.
+     */
     public User updateUser(@Valid @RequestBody User user) {
         isValidUser(user);
-        return userStorage.updateUser(user);
+        User updatedUser = userStorage.updateUser(user);
+        updatedUser.setFriends(SortedIntSet.of(friendshipGraph.getFriendIds(updatedUser.getId())));
+        updatedUser.setFriendsRequests(SortedIntSet.of(friendshipGraph.getFriendRequestIds(updatedUser.getId())));
+        return updatedUser;
     }
 
+    /**
+     * Встречная заявка принимается одним UPDATE, иначе связь создается вместе с заявкой у друга.
+     * Стоимость не зависит от количества друзей: строки пользователей не перезаписываются.
+     * Запись в базу данных и обновление графа идут под блокировкой пары из {@link FriendshipLocks}.
+     */
     public User addToFriends(final Integer userId, final Integer friendId) {
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(friendId);
-
-        if (user.getFriendsRequests().contains(friendId)) {
-            user.getFriendsRequests().remove(friendId);
-            user.getFriends().add(friendId);
-        }
-
-        friend.getFriendsRequests().add(userId);
-        user.getFriends().add(friendId);
-        userStorage.updateUser(user);
-        userStorage.updateUser(friend);
-        return friend;
+        friendshipLocks.withPairLock(userId, friendId, () -> {
+            boolean isAccepted = friendshipGraph.getStatus(userId, friendId) == FriendshipGraph.Status.REQUESTED
+                    && userStorage.acceptFriendship(userId, friendId);
+
+            if (!isAccepted && userStorage.requestFriendship(userId, friendId)) {
+                friendshipGraph.addFriendship(friendId, userId, false);
+            }
+            friendshipGraph.addFriendship(userId, friendId, true);
+            return null;
+        });
+        return userStorage.getUserById(friendId);
     }
 
     public User removeFromFriends(final Integer userId, final Integer otherUserId) {
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(otherUserId);
-
-        user.getFriends().remove(otherUserId);
-        user.getFriendsRequests().remove(otherUserId);
-        friend.getFriends().remove(userId);
-        friend.getFriendsRequests().remove(userId);
-
-        userStorage.removeFriendById(userId, otherUserId);
-        return friend;
+        checkUserExist(userId);
+
+        friendshipLocks.withPairLock(userId, otherUserId, () -> {
+            userStorage.removeFriendship(userId, otherUserId);
+            friendshipGraph.removeFriendship(userId, otherUserId);
+            return null;
+        });
+        return userStorage.getUserById(otherUserId);
     }
 
     public List<User> getCommonFriends(final Integer userId, final Integer otherUserId) {
-        User user = userStorage.getUserById(userId);
-        User otherUser = userStorage.getUserById(otherUserId);
-
-        return user.getFriends().stream()
-                .filter(friendId -> otherUser.getFriends().stream()
-                        .anyMatch(otherUserFriendId -> friendId.equals(otherUserFriendId)))
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+        checkUserExist(userId);
+        checkUserExist(otherUserId);
+        return userStorage.getUsersByIds(toList(friendshipGraph.getCommonFriendIds(userId, otherUserId)));
     }
 
     public User getUserById(final Integer userId) {
@@ -83,10 +101,41 @@ public class UserService {
         return userStorage.getAllUsers();
     }
 
+    public Page<User> getUsersPage(final Integer limit, final String afterCursor) {
+        PageCursor.checkLimit(limit);
+        return PageCursor.toPage(userStorage.getUsersPage(PageCursor.decode(afterCursor), limit), limit, User::getId);
+    }
+
     public List<User> getUserFriends(final Integer userId) {
-        return userStorage.getUserById(userId).getFriends().stream()
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+        checkUserExist(userId);
+        return userStorage.getUsersByIds(toList(friendshipGraph.getFriendIds(userId)));
+    }
+
+    public Page<User> getUserFriendsPage(final Integer userId, final Integer limit, final String afterCursor) {
+        PageCursor.checkLimit(limit);
+        checkUserExist(userId);
+        int[] friendIds = friendshipGraph.getFriendIdsPage(userId, PageCursor.decode(afterCursor), limit);
+        return PageCursor.toPage(userStorage.getUsersByIds(toList(friendIds)), limit, User::getId);
+    }
+
+    public List<User> getFriendSuggestions(final Integer userId, final Integer limit) {
+        if (limit <= 0) {
+            throw new IncorrectParameterException("Указано неверное количество рекомендуемых друзей: " + limit);
+        }
+
+        checkUserExist(userId);
+        return userStorage.getUsersByIds(toList(friendshipGraph.getSuggestedFriendIds(userId,
+                Math.min(limit, PageCursor.MAX_PAGE_SIZE))));
+    }
+
+    private List<Integer> toList(final int[] userIds) {
+        return Arrays.stream(userIds).boxed().collect(Collectors.toList());
+    }
+
+    private void checkUserExist(final Integer userId) {
+        if (!userStorage.isUserExist(userId)) {
+            throw new UserNotFoundException("Пользователь не найден: " + userId);
+        }
     }
 
     public void isValidUser(User user) {
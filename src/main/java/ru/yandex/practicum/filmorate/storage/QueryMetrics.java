@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Таймер filmorate.db.query на каждый вызов хранилищ в базе данных. Тег operation - имя метода хранилища,
+ * поэтому все запросы одной логической операции (например, сборка фильма из трех запросов) попадают в один таймер.
+ */
+@Aspect
+@Component
+public class QueryMetrics {
+
+    public static final String TIMER_NAME = "filmorate.db.query";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public QueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.storage.film.FilmDbStorage.*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage.user.UserDbStorage.*(..))")
+    public Object time(final ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER_NAME)
+                    .description("Время операций хранилищ с базой данных")
+                    .tag("storage", joinPoint.getTarget().getClass().getSimpleName())
+                    .tag("operation", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фильмов по ID поверх хранилища в базе данных. Размер кэша ограничен, вытеснение учитывает частоту
+ * обращений (W-TinyLFU). Каждая запись фильма или его лайков сбрасывает запись этого фильма в кэше.
+ * Фильмы из кэша общие для всех запросов и не должны изменяться. Статистика кэша публикуется в метрики cache.*
+ * с тегом cache=films.
+ *
+ * <p>Пакетное чтение загружает недостающие фильмы одним запросом и кладет их в кэш, только если за время загрузки
+ * не было ни одного сброса: иначе фильм, прочитанный до записи, мог бы попасть в кэш уже после ее сброса.
+ */
+@Component("cachingFilmStorage")
+public class CachingFilmStorage implements FilmStorage, MeterBinder {
+
+    private final FilmStorage filmStorage;
+    private final Cache<Integer, Film> films;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public CachingFilmStorage(@Qualifier("writeBehindFilmStorage") FilmStorage filmStorage,
+                              @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize) {
+        this.filmStorage = filmStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public CacheStats getStats() {
+        return films.stats();
+    }
+
+    public long getSize() {
+        return films.estimatedSize();
+    }
+
+    void cleanUp() {
+        films.cleanUp();
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, films, "films");
+    }
+
+    @Override
+    public Film add(final Film film) {
+        return filmStorage.add(film);
+    }
+
+    @Override
+    public List<Integer> addFilms(final List<Film> films) {
+        return filmStorage.addFilms(films);
+    }
+
+    @Override
+    public Film remove(final Film film) {
+        Film removedFilm = filmStorage.remove(film);
+        invalidate(film.getId());
+        return removedFilm;
+    }
+
+    @Override
+    public Film update(final Film film) {
+        Film updatedFilm = filmStorage.update(film);
+        invalidate(film.getId());
+        return updatedFilm;
+    }
+
+    @Override
+    public Film getFilmById(final Integer filmId) {
+        return films.get(filmId, filmStorage::getFilmById);
+    }
+
+    @Override
+    public List<Film> getAllFilms() {
+        return filmStorage.getAllFilms();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(final Integer afterFilmId, final Integer limit) {
+        return filmStorage.getFilmsPage(afterFilmId, limit);
+    }
+
+    @Override
+    public void exportFilms(final Consumer<Film> filmConsumer) {
+        filmStorage.exportFilms(filmConsumer);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(final Integer count) {
+        return filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(final List<Integer> filmIds) {
+        Map<Integer, Film> filmsById = new HashMap<>(films.getAllPresent(filmIds));
+        List<Integer> missingIds = filmIds.stream()
+                .filter(filmId -> !filmsById.containsKey(filmId))
+                .distinct()
+                .collect(Collectors.toList());
+        if (!missingIds.isEmpty()) {
+            long loadedAt = invalidations.get();
+            for (Film film : filmStorage.getFilmsByIds(missingIds)) {
+                Film cachedFilm = films.asMap().compute(film.getId(), (filmId, present) ->
+                        present != null ? present : invalidations.get() == loadedAt ? film : null);
+                filmsById.put(film.getId(), cachedFilm != null ? cachedFilm : film);
+            }
+        }
+
+        return filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCountByFilm() {
+        return filmStorage.getLikesCountByFilm();
+    }
+
+    @Override
+    public void exportLikes(final LikeConsumer likeConsumer) {
+        filmStorage.exportLikes(likeConsumer);
+    }
+
+    @Override
+    public List<FilmGenre> getAllGenres() {
+        return filmStorage.getAllGenres();
+    }
+
+    @Override
+    public FilmGenre getGenreById(final Integer genreId) {
+        return filmStorage.getGenreById(genreId);
+    }
+
+    @Override
+    public List<FilmRating> getAllRatings() {
+        return filmStorage.getAllRatings();
+    }
+
+    @Override
+    public FilmRating getRatingById(final Integer ratingId) {
+        return filmStorage.getRatingById(ratingId);
+    }
+
+    @Override
+    public boolean isLikeExist(final Integer userId, final Integer filmId) {
+        return filmStorage.isLikeExist(userId, filmId);
+    }
+
+    @Override
+    public boolean addUserLikeToFilm(final Integer userId, final Integer filmId) {
+        boolean isAddedLikeToFilm = filmStorage.addUserLikeToFilm(userId, filmId);
+        invalidate(filmId);
+        return isAddedLikeToFilm;
+    }
+
+    @Override
+    public List<FilmLike> addLikes(final List<FilmLike> likes) {
+        List<FilmLike> addedLikes = filmStorage.addLikes(likes);
+        invalidateAll(addedLikes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()));
+        return addedLikes;
+    }
+
+    @Override
+    public boolean removeUserLike(final Integer userId, final Integer filmId) {
+        boolean isLikeRemoved = filmStorage.removeUserLike(userId, filmId);
+        invalidate(filmId);
+        return isLikeRemoved;
+    }
+
+    @Override
+    public void removeLikes(final List<FilmLike> likes) {
+        filmStorage.removeLikes(likes);
+        invalidateAll(likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()));
+    }
+
+    /**
+     * Счетчик увеличивается до сброса записи, поэтому пакетная загрузка, которая положит фильм в кэш после сброса,
+     * увидит новое значение счетчика и не положит его.
+     */
+    private void invalidate(final Integer filmId) {
+        invalidations.incrementAndGet();
+        films.invalidate(filmId);
+    }
+
+    private void invalidateAll(final Set<Integer> filmIds) {
+        invalidations.incrementAndGet();
+        films.invalidateAll(filmIds);
+    }
+}
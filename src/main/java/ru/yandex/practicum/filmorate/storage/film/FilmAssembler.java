@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Собирает фильмы вместе с рейтингом, жанрами и лайками за постоянное число запросов:
+ * фильмы одним запросом, затем жанры и лайки всех выбранных фильмов пакетно.
+ * Рейтинги и названия жанров берутся из {@link ReferenceDataRegistry} без обращения к базе данных.
+ * Лайки читаются по возрастанию ID пользователя и дописываются в конец {@link SortedIntSet} без упаковки в Integer.
+ * Все чтения нескольких фильмов из {@link FilmDbStorage} должны идти через этот класс.
+ */
+class FilmAssembler {
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    static final String SELECT_MOVIES = "SELECT m.id, m.title, m.description, m.duration, m.release_date, " +
+            "m.rating_id " +
+            "FROM movies m ";
+    private static final String SELECT_GENRES = "SELECT movie_id, genre_id FROM movie_genre ";
+    private static final String SELECT_LIKES = "SELECT movie_id, user_id FROM movie_like ";
+    static final String SELECT_GENRES_BY_MOVIE_IDS = SELECT_GENRES +
+            "WHERE movie_id IN (:ids) ORDER BY movie_id, genre_id";
+    static final String SELECT_LIKES_BY_MOVIE_IDS = SELECT_LIKES +
+            "WHERE movie_id IN (:ids) ORDER BY movie_id, user_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ReferenceDataRegistry referenceDataRegistry;
+
+    FilmAssembler(final JdbcTemplate jdbcTemplate, final ReferenceDataRegistry referenceDataRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.referenceDataRegistry = referenceDataRegistry;
+    }
+
+    List<Film> findAll() {
+        List<Film> films = jdbcTemplate.query(SELECT_MOVIES + "ORDER BY m.id", this::mapRowToFilm);
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Map<Integer, Film> filmsById = indexById(films);
+        jdbcTemplate.query(SELECT_GENRES + "ORDER BY movie_id, genre_id", rs -> {
+            addGenre(filmsById, rs);
+        });
+        LikesCollector likes = new LikesCollector(filmsById);
+        jdbcTemplate.query(SELECT_LIKES + "ORDER BY movie_id, user_id", likes::add);
+        likes.finish();
+        return films;
+    }
+
+    /**
+     * Потоково выдает все фильмы по возрастанию ID, не накапливая их в памяти.
+     * Фильмы, жанры и лайки читаются тремя курсорами, отсортированными по ID фильма, и сливаются по мере чтения.
+     */
+    void streamAll(final Consumer<Film> filmConsumer) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement movieStatement = prepareCursor(connection, SELECT_MOVIES + "ORDER BY m.id");
+                 PreparedStatement genreStatement = prepareCursor(connection,
+                         SELECT_GENRES + "ORDER BY movie_id, genre_id");
+                 PreparedStatement likeStatement = prepareCursor(connection, SELECT_LIKES + "ORDER BY movie_id, user_id");
+                 ResultSet movies = movieStatement.executeQuery();
+                 ResultSet genres = genreStatement.executeQuery();
+                 ResultSet likes = likeStatement.executeQuery()) {
+                boolean hasGenre = genres.next();
+                boolean hasLike = likes.next();
+                int rowNum = 0;
+
+                while (movies.next()) {
+                    Film film = mapRowToFilm(movies, rowNum++);
+                    Map<Integer, Film> currentFilm = Map.of(film.getId(), film);
+
+                    while (hasGenre && genres.getInt("movie_id") <= film.getId()) {
+                        if (genres.getInt("movie_id") == film.getId()) {
+                            addGenre(currentFilm, genres);
+                        }
+                        hasGenre = genres.next();
+                    }
+                    LikesCollector filmLikes = new LikesCollector(currentFilm);
+                    while (hasLike && likes.getInt("movie_id") <= film.getId()) {
+                        if (likes.getInt("movie_id") == film.getId()) {
+                            filmLikes.add(likes);
+                        }
+                        hasLike = likes.next();
+                    }
+                    filmLikes.finish();
+                    filmConsumer.accept(film);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @param condition часть запроса после FROM/JOIN по таблице movies (алиас m), например "WHERE m.id = ?"
+     */
+    List<Film> find(final String condition, final Object... args) {
+        List<Film> films = jdbcTemplate.query(SELECT_MOVIES + condition, this::mapRowToFilm, args);
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Map<Integer, Film> filmsById = indexById(films);
+        List<Integer> filmIds = new ArrayList<>(filmsById.keySet());
+        LikesCollector likes = new LikesCollector(filmsById);
+
+        for (int from = 0; from < filmIds.size(); from += MAX_IDS_PER_QUERY) {
+            MapSqlParameterSource params = new MapSqlParameterSource("ids",
+                    filmIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, filmIds.size())));
+
+            namedJdbcTemplate.query(SELECT_GENRES_BY_MOVIE_IDS, params, rs -> {
+                addGenre(filmsById, rs);
+            });
+            namedJdbcTemplate.query(SELECT_LIKES_BY_MOVIE_IDS, params, likes::add);
+        }
+        likes.finish();
+        return films;
+    }
+
+    private PreparedStatement prepareCursor(final Connection connection, final String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(STREAM_FETCH_SIZE);
+        return statement;
+    }
+
+    private Map<Integer, Film> indexById(final List<Film> films) {
+        Map<Integer, Film> filmsById = new LinkedHashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        return filmsById;
+    }
+
+    private void addGenre(final Map<Integer, Film> filmsById, final ResultSet rs) throws SQLException {
+        Film film = filmsById.get(rs.getInt("movie_id"));
+        film.getGenres().add(referenceDataRegistry.getGenreById(rs.getInt("genre_id")));
+    }
+
+
+    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
+        return Film.builder()
+                .id(rs.getInt("id"))
+                .name(rs.getString("title"))
+                .description(rs.getString("description"))
+                .duration(rs.getInt("duration"))
+                .releaseDate(rs.getDate("release_date").toLocalDate())
+                .mpa(referenceDataRegistry.getRatingById(rs.getInt("rating_id")))
+                .genres(new LinkedHashSet<>())
+                .usersLikes(new SortedIntSet())
+                .build();
+    }
+
+    /**
+     * Собирает лайки, упорядоченные по ID фильма и пользователя, в отдельный {@link SortedIntSet}
+     * для каждого фильма и отдает его фильму одним вызовом сеттера, когда строки фильма закончились.
+     */
+    private static class LikesCollector {
+
+        private final Map<Integer, Film> filmsById;
+        private int filmId;
+        private SortedIntSet likes;
+
+        private LikesCollector(final Map<Integer, Film> filmsById) {
+            this.filmsById = filmsById;
+        }
+
+        private void add(final ResultSet rs) throws SQLException {
+            int movieId = rs.getInt("movie_id");
+            if (likes == null || movieId != filmId) {
+                finish();
+                filmId = movieId;
+                likes = new SortedIntSet();
+            }
+            likes.addInt(rs.getInt("user_id"));
+        }
+
+        private void finish() {
+            if (likes != null) {
+                filmsById.get(filmId).setUsersLikes(likes);
+                likes = null;
+            }
+        }
+    }
+}
@@ -2,37 +2,69 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.LikeException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
 
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component("filmDbStorage")
 @Slf4j
 public class FilmDbStorage implements FilmStorage {
 
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    private static final int MAX_ROWS_PER_TRANSACTION = 1000;
+    static final String SELECT_LIKE_EXISTS =
+            "SELECT EXISTS (SELECT 1 FROM movie_like WHERE movie_id = ? AND user_id = ?)";
+    static final String INSERT_LIKE = "INSERT INTO movie_like (movie_id, user_id) " +
+            "SELECT CAST(? AS INTEGER), CAST(? AS INTEGER) FROM DUAL " +
+            "WHERE NOT EXISTS (SELECT 1 FROM movie_like WHERE movie_id = ? AND user_id = ?)";
+    static final String DELETE_LIKE = "DELETE FROM movie_like WHERE movie_id = ? AND user_id = ?";
+    static final String SELECT_LIKE_USER_IDS = "SELECT user_id FROM movie_like WHERE movie_id = ? ORDER BY user_id";
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final FilmAssembler filmAssembler;
+    private final SimpleJdbcInsert movieInsert;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, ReferenceDataRegistry referenceDataRegistry,
+                         PlatformTransactionManager transactionManager) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataRegistry = referenceDataRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.filmAssembler = new FilmAssembler(jdbcTemplate, referenceDataRegistry);
+        this.movieInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("movies")
+                .usingGeneratedKeyColumns("id");
     }
 
     @Override
     public Film add(Film film) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("movies")
-                .usingGeneratedKeyColumns("id");
+        resolveReferenceData(film);
 
-        Integer filmIdFromDbAfterInsert = simpleJdbcInsert.executeAndReturnKey(film.toMap()).intValue();
+        Integer filmIdFromDbAfterInsert = movieInsert.executeAndReturnKey(film.toMap()).intValue();
         film.setId(filmIdFromDbAfterInsert);
 
         addGenresToDb(film);
@@ -41,6 +73,44 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
+    /**
+     * Добавляет фильмы пакетами JDBC, по одной транзакции на каждые {@link #MAX_ROWS_PER_TRANSACTION} фильмов.
+     * Уже записанные пакеты при ошибке в следующем не откатываются.
+     */
+    @Override
+    public List<Integer> addFilms(final List<Film> films) {
+        films.forEach(this::resolveReferenceData);
+        String sqlInsertMovie = "INSERT INTO movies (title, description, duration, release_date, rating_id) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        String sqlInsertGenre = "INSERT INTO movie_genre (movie_id, genre_id) VALUES (?, ?)";
+
+        for (int from = 0; from < films.size(); from += MAX_ROWS_PER_TRANSACTION) {
+            List<Film> chunk = films.subList(from, Math.min(from + MAX_ROWS_PER_TRANSACTION, films.size()));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Integer> filmIds = insertWithGeneratedIds(sqlInsertMovie, chunk, (ps, film) -> {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setInt(3, film.getDuration());
+                    ps.setDate(4, Date.valueOf(film.getReleaseDate()));
+                    ps.setInt(5, film.getMpa().getId());
+                });
+
+                List<Object[]> genres = new ArrayList<>();
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).setId(filmIds.get(i));
+                    for (FilmGenre genre : chunk.get(i).getGenres()) {
+                        genres.add(new Object[]{filmIds.get(i), genre.getId()});
+                    }
+                }
+                jdbcTemplate.batchUpdate(sqlInsertGenre, genres);
+            });
+        }
+
+        log.info("Пакетно добавлено {} фильмов в базу данных в таблицы movies, movie_genre", films.size());
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+
     @Override
     public Film remove(Film film) {
         String sqlDeleteFilm = "DELETE FROM movies WHERE id = ?";
@@ -51,135 +121,307 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
+    /**
+     * Обновляет фильм и записывает только изменившиеся жанры: удаление лишних и добавление недостающих идут
+     * одним пакетом без предварительного чтения жанров. Фильм после обновления не перечитывается,
+     * а лайки, которые обновлением не меняются, заменяются сохраненными одним запросом по ключу movie_like:
+     * присланные клиентом лайки в ответ не попадают.
+     */
     @Override
     public Film update(Film film) {
+        resolveReferenceData(film);
         String sql = "UPDATE movies SET title = ?, description = ?, duration = ?, release_date = ?, rating_id = ? " +
                 "WHERE id = ?";
 
-        jdbcTemplate.update(sql, film.getName(), film.getDescription(), film.getDuration(), film.getReleaseDate(),
-                film.getMpa().getId(), film.getId());
-
-        addGenresToDb(film);
+        transactionTemplate.executeWithoutResult(status -> {
+            int updatedRows = jdbcTemplate.update(sql, film.getName(), film.getDescription(), film.getDuration(),
+                    film.getReleaseDate(), film.getMpa().getId(), film.getId());
+            if (updatedRows == 0) {
+                throw new FilmNotFoundException("Фильм не найден: " + film.getId());
+            }
+            saveGenresDelta(film);
+            film.setUsersLikes(getLikeUserIds(film.getId()));
+        });
 
-        String sqlReadQuery = "SELECT * FROM movies WHERE id = ?";
-        Film updatedFilm = jdbcTemplate.queryForObject(sqlReadQuery, this::mapRowToFilm, film.getId());
-        log.info("Фильм успешно обновлен в базе данных по таблице movies. \n {}", updatedFilm);
-        return updatedFilm;
+        log.info("Фильм успешно обновлен в базе данных по таблице movies. \n {}", film);
+        return film;
     }
 
     @Override
     public Film getFilmById(Integer filmId) {
-        String sqlReadQuery = "SELECT * FROM movies WHERE id = ?";
-        Film film = jdbcTemplate.queryForObject(sqlReadQuery, this::mapRowToFilm, filmId);
+        Film film = getFilmFromDb(filmId);
         log.info("Получен фильм из базы данных по таблице movies. \n {}", film);
         return film;
     }
 
     @Override
     public List<Film> getAllFilms() {
-        String sqlReadQuery = "SELECT * FROM movies";
-        List<Film> films = jdbcTemplate.query(sqlReadQuery, this::mapRowToFilm);
+        List<Film> films = filmAssembler.findAll();
         log.info("Получен список фильмов из базы данных по таблице movies. \n {}", films);
         return films;
     }
 
+    @Override
+    public List<Film> getFilmsPage(final Integer afterFilmId, final Integer limit) {
+        List<Film> films = filmAssembler.find("WHERE m.id > ? ORDER BY m.id LIMIT ?", afterFilmId, limit);
+        log.info("Получена страница из {} фильмов после ID: {} из базы данных по таблице movies.",
+                films.size(), afterFilmId);
+        return films;
+    }
+
+    @Override
+    public void exportFilms(final Consumer<Film> filmConsumer) {
+        log.info("Начата потоковая выгрузка фильмов из базы данных по таблице movies.");
+        filmAssembler.streamAll(filmConsumer);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(final Integer count) {
+        String condition = "LEFT JOIN (SELECT movie_id, COUNT(*) AS likes_count FROM movie_like " +
+                "GROUP BY movie_id) l ON l.movie_id = m.id " +
+                "ORDER BY COALESCE(l.likes_count, 0) DESC, m.id " +
+                "LIMIT ?";
+
+        List<Film> films = filmAssembler.find(condition, count);
+        log.info("Получен топ {} фильмов по лайкам из базы данных по таблицам movies, movie_like. \n {}",
+                count, films);
+        return films;
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(final List<Integer> filmIds) {
+        Map<Integer, Film> filmsById = new HashMap<>();
+
+        for (int from = 0; from < filmIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<Integer> ids = filmIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, filmIds.size()));
+            for (Film film : filmAssembler.find(idsCondition(ids.size()), ids.toArray())) {
+                filmsById.put(film.getId(), film);
+            }
+        }
+
+        List<Film> films = filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        log.info("Получены фильмы по списку ID: {} из базы данных по таблице movies.", filmIds);
+        return films;
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCountByFilm() {
+        String sql = "SELECT m.id, COUNT(ml.user_id) AS likes_count FROM movies m " +
+                "LEFT JOIN movie_like ml ON ml.movie_id = m.id " +
+                "GROUP BY m.id";
+
+        Map<Integer, Integer> likesCountByFilm = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            likesCountByFilm.put(rs.getInt("id"), rs.getInt("likes_count"));
+        });
+        log.info("Получено количество лайков {} фильмов из базы данных по таблице movie_like.",
+                likesCountByFilm.size());
+        return likesCountByFilm;
+    }
+
+    @Override
+    public void exportLikes(final LikeConsumer likeConsumer) {
+        String sql = "SELECT user_id, movie_id FROM movie_like ORDER BY user_id, movie_id";
+
+        jdbcTemplate.query(sql, rs -> {
+            likeConsumer.accept(rs.getInt("user_id"), rs.getInt("movie_id"));
+        });
+        log.info("Выгружены лайки из базы данных по таблице movie_like.");
+    }
+
     @Override
     public List<FilmGenre> getAllGenres() {
-        String sql = "SELECT * FROM genre ORDER BY ID";
-        List<FilmGenre> genres = jdbcTemplate.query(sql, this::mapRowToGenre);
-        log.info("Из базы данных получен список всех жанров по таблице genre. \n {}", genres);
-        return genres;
+        return referenceDataRegistry.getAllGenres();
     }
 
     @Override
     public FilmGenre getGenreById(final Integer genreId) {
-        String sql = "SELECT * FROM genre WHERE id = ?";
-        FilmGenre filmGenre = jdbcTemplate.queryForObject(sql, this::mapRowToGenre, genreId);
-        log.info("Из базы данных получен жанр по ID: {} в таблице genre. \n {}", genreId, filmGenre);
-        return filmGenre;
+        return referenceDataRegistry.getGenreById(genreId);
     }
 
     @Override
     public List<FilmRating> getAllRatings() {
-        String sql = "SELECT * FROM rating ORDER BY ID";
-        List<FilmRating> filmRatings = jdbcTemplate.query(sql, this::mapRowToRating);
-        log.info("Из базы данных получен список рейтингов фильмов. \n {}", filmRatings);
-        return filmRatings;
+        return referenceDataRegistry.getAllRatings();
     }
 
     @Override
     public FilmRating getRatingById(Integer ratingId) {
-        String sql = "SELECT * FROM rating WHERE id = ?";
-        FilmRating filmRating = jdbcTemplate.queryForObject(sql, this::mapRowToRating, ratingId);
-        log.info("Из базы данных получен рейтинг по ID: {} в таблице rating. \n {}", ratingId, filmRating);
-        return filmRating;
+        return referenceDataRegistry.getRatingById(ratingId);
     }
 
     @Override
-    public boolean addUserLikeToFilm(final Integer userId, final Integer filmId) {
-        String sql = "INSERT INTO movie_like (movie_id, user_id) " +
-                "VALUES(?, ?)";
+    public boolean isLikeExist(final Integer userId, final Integer filmId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(SELECT_LIKE_EXISTS, Boolean.class, filmId, userId));
+    }
 
-        boolean isAddedLikeToFilm = jdbcTemplate.update(sql, filmId, userId) > 1;
+    /**
+     * Добавляет лайк одним условным INSERT без чтения фильма. Существование фильма и пользователя
+     * проверяют внешние ключи, повторный лайк ничего не меняет и возвращает false.
+     */
+    @Override
+    public boolean addUserLikeToFilm(final Integer userId, final Integer filmId) {
+        boolean isAddedLikeToFilm;
+        try {
+            isAddedLikeToFilm = jdbcTemplate.update(INSERT_LIKE, filmId, userId, filmId, userId) == 1;
+        } catch (DuplicateKeyException e) {
+            // тот же лайк параллельно вставил другой запрос
+            isAddedLikeToFilm = false;
+        } catch (DataIntegrityViolationException e) {
+            throw likeReferenceNotFound(userId, filmId, e);
+        }
         if (isAddedLikeToFilm) {
             log.info("Пользователь ID {} поставил лайк фильму ID {}", userId, filmId);
         }
         return isAddedLikeToFilm;
     }
 
+    /**
+     * Добавляет лайки пакетами JDBC и возвращает только новые: уже существующие лайки и повторы внутри пакета
+     * пропускаются условием NOT EXISTS. Лайк, который параллельно вставил другой запрос, откатывает пакет
+     * с {@link LikeException}, а нарушение внешнего ключа - с ошибкой о ненайденном фильме или пользователе.
+     */
     @Override
-    public boolean removeUserLike(final Integer userId, final Integer filmId) {
-        String sql = "DELETE FROM movie_like WHERE movie_id = ? AND user_id = ?";
+    public List<FilmLike> addLikes(final List<FilmLike> likes) {
+        List<FilmLike> addedLikes = new ArrayList<>();
+
+        for (int from = 0; from < likes.size(); from += MAX_ROWS_PER_TRANSACTION) {
+            List<FilmLike> chunk = likes.subList(from, Math.min(from + MAX_ROWS_PER_TRANSACTION, likes.size()));
+            List<Object[]> rows = chunk.stream()
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId()})
+                    .collect(Collectors.toList());
+
+            int[] insertedRows;
+            try {
+                insertedRows = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_LIKE, rows));
+            } catch (DuplicateKeyException exception) {
+                throw new LikeException("Лайк из пакета параллельно добавлен другим запросом", exception);
+            } catch (DataIntegrityViolationException exception) {
+                throw likesReferenceNotFound(chunk, exception);
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                if (insertedRows[i] > 0) {
+                    addedLikes.add(chunk.get(i));
+                }
+            }
+        }
 
-        boolean isLikeRemoved = jdbcTemplate.update(sql, filmId, userId) > 1;
+        log.info("Пакетно добавлено {} лайков из {} в базу данных в таблицу movie_like", addedLikes.size(),
+                likes.size());
+        return addedLikes;
+    }
+
+    @Override
+    public boolean removeUserLike(final Integer userId, final Integer filmId) {
+        boolean isLikeRemoved = jdbcTemplate.update(DELETE_LIKE, filmId, userId) == 1;
         if (isLikeRemoved) {
             log.info("Пользователь ID {} удалил лайк у фильма ID {}", userId, filmId);
         }
         return isLikeRemoved;
     }
 
-    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
-        Integer filmId = rs.getInt("id");
+    @Override
+    public void removeLikes(final List<FilmLike> likes) {
+
+        for (int from = 0; from < likes.size(); from += MAX_ROWS_PER_TRANSACTION) {
+            List<Object[]> rows = likes.subList(from, Math.min(from + MAX_ROWS_PER_TRANSACTION, likes.size()))
+                    .stream()
+                    .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                    .collect(Collectors.toList());
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(DELETE_LIKE, rows));
+        }
+        log.info("Пакетно удалено до {} лайков из базы данных из таблицы movie_like", likes.size());
+    }
+
+    /**
+     * Условие выборки фильмов по списку из count ID для {@link FilmAssembler#find}.
+     */
+    static String idsCondition(final int count) {
+        return "WHERE m.id IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
 
-        return Film.builder()
-                .id(filmId)
-                .name(rs.getString("title"))
-                .description(rs.getString("description"))
-                .duration(rs.getInt("duration"))
-                .releaseDate(rs.getDate("release_date").toLocalDate())
-                .mpa(getRatingById(rs.getInt("rating_id")))
-                .genres(getGenresFromDb(filmId))
-                .usersLikes(getUsersLikedFilmFromDb(filmId))
-                .build();
+    /**
+     * Определяет по нарушению внешнего ключа, кого из двух нет в базе данных. Запрос выполняется только при ошибке.
+     */
+    private RuntimeException likeReferenceNotFound(final Integer userId, final Integer filmId,
+                                                   final DataIntegrityViolationException exception) {
+        Integer films = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM movies WHERE id = ?", Integer.class, filmId);
+        if (films == null || films == 0) {
+            return new FilmNotFoundException("Фильм не найден: " + filmId, exception);
+        }
+        return new UserNotFoundException("Пользователь не найден: " + userId, exception);
     }
 
-    private FilmGenre mapRowToGenre(ResultSet rs, int rowNum) throws SQLException {
-        return FilmGenre.builder()
-                .id(rs.getInt("id"))
-                .name(rs.getString("name"))
-                .build();
+    /**
+     * Определяет по нарушению внешнего ключа в пакете лайков, каких фильмов или пользователей нет в базе данных.
+     * Запросы выполняются только при ошибке.
+     */
+    private RuntimeException likesReferenceNotFound(final List<FilmLike> likes,
+                                                    final DataIntegrityViolationException exception) {
+        Set<Integer> missingFilmIds = findMissingIds("movies",
+                likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()));
+        if (!missingFilmIds.isEmpty()) {
+            return new FilmNotFoundException("Фильмы из пакета лайков не найдены: " + missingFilmIds, exception);
+        }
+        Set<Integer> missingUserIds = findMissingIds("users",
+                likes.stream().map(FilmLike::getUserId).collect(Collectors.toSet()));
+        if (!missingUserIds.isEmpty()) {
+            return new UserNotFoundException("Пользователи из пакета лайков не найдены: " + missingUserIds,
+                    exception);
+        }
+        return new LikeException("Пакет лайков не записан в базу данных", exception);
     }
 
-    private FilmRating mapRowToRating(ResultSet rs, int rowNum) throws SQLException {
-        return FilmRating.builder()
-                .id(rs.getInt("id"))
-                .name(rs.getString("name"))
-                .build();
+    private Set<Integer> findMissingIds(final String table, final Set<Integer> ids) {
+        String sql = "SELECT id FROM " + table + " WHERE id IN (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        Set<Integer> missingIds = new TreeSet<>(ids);
+        missingIds.removeAll(jdbcTemplate.queryForList(sql, Integer.class, ids.toArray()));
+        return missingIds;
     }
 
-    private Set<Integer> getUsersLikedFilmFromDb(final Integer filmId) {
-        String sql = "SELECT * FROM movie_like WHERE movie_id = ?";
+    private Film getFilmFromDb(final Integer filmId) {
+        return DataAccessUtils.requiredSingleResult(filmAssembler.find("WHERE m.id = ?", filmId));
+    }
 
-        Set<Integer> filmLikedUsersIds = new HashSet<>();
+    /**
+     * Выполняет вставку одним пакетом JDBC и возвращает сгенерированные ID в порядке строк.
+     */
+    private <T> List<Integer> insertWithGeneratedIds(final String sql, final List<T> rows,
+                                                     final RowSetter<T> rowSetter) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, new String[]{"ID"})) {
+                for (T row : rows) {
+                    rowSetter.setValues(ps, row);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                List<Integer> ids = new ArrayList<>(rows.size());
+                try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        ids.add(generatedKeys.getInt(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
 
-        jdbcTemplate.query(sql, rs -> {
-            filmLikedUsersIds.add(rs.getInt("user_id"));
-        }, filmId);
-        return filmLikedUsersIds;
+    private void resolveReferenceData(final Film film) {
+        film.setMpa(referenceDataRegistry.getRatingById(film.getMpa().getId()));
+        film.setGenres(film.getGenres().stream()
+                .map(FilmGenre::getId)
+                .sorted()
+                .distinct()
+                .map(referenceDataRegistry::getGenreById)
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
     }
 
     private void addGenresToDb(final Film film) {
-        String sql = "INSERT INTO movie_genre (movie_id, genre_id) VALUES (?, ?)";
+        String sql = "MERGE INTO movie_genre (movie_id, genre_id) KEY (movie_id, genre_id) VALUES (?, ?)";
         List<FilmGenre> genres = new ArrayList<>(film.getGenres());
         Integer filmId = film.getId();
 
@@ -198,12 +440,49 @@ public class FilmDbStorage implements FilmStorage {
         });
     }
 
-    private Set<FilmGenre> getGenresFromDb(final Integer filmId) {
-        String sql = "SELECT g.id, g.name FROM movie_genre mg " +
-                "JOIN genre g ON mg.genre_id = g.id " +
-                "WHERE mg.movie_id = ? " +
-                "ORDER BY g.id";
+    private SortedIntSet getLikeUserIds(final Integer filmId) {
+        SortedIntSet userIds = new SortedIntSet();
+        jdbcTemplate.query(SELECT_LIKE_USER_IDS, rs -> {
+            userIds.addInt(rs.getInt("user_id"));
+        }, filmId);
+        return userIds;
+    }
+
+    private void saveGenresDelta(final Film film) {
+        Integer filmId = film.getId();
+        List<Integer> genreIds = film.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toList());
+
+        int[] updatedRows = genreIds.isEmpty()
+                ? jdbcTemplate.batchUpdate(deleteGenresSql(filmId, genreIds))
+                : jdbcTemplate.batchUpdate(deleteGenresSql(filmId, genreIds), insertGenresSql(filmId, genreIds));
+        log.debug("Жанры фильма ID {} обновлены: удалено {}, добавлено {}", filmId, updatedRows[0],
+                updatedRows.length > 1 ? updatedRows[1] : 0);
+    }
+
+    /**
+     * Удаляет жанры фильма, которых нет в списке. ID подставляются в текст запроса, чтобы удаление и вставка
+     * ушли в базу данных одним пакетом.
+     */
+    static String deleteGenresSql(final int filmId, final List<Integer> genreIds) {
+        return "DELETE FROM movie_genre WHERE movie_id = " + filmId +
+                (genreIds.isEmpty() ? "" : " AND genre_id NOT IN (" + joinIds(genreIds) + ")");
+    }
+
+    /**
+     * Добавляет фильму жанры из непустого списка, которых у него еще нет.
+     */
+    static String insertGenresSql(final int filmId, final List<Integer> genreIds) {
+        return "INSERT INTO movie_genre (movie_id, genre_id) SELECT " + filmId + ", g.id FROM genre g " +
+                "WHERE g.id IN (" + joinIds(genreIds) + ") " +
+                "AND NOT EXISTS (SELECT 1 FROM movie_genre WHERE movie_id = " + filmId + " AND genre_id = g.id)";
+    }
+
+    private static String joinIds(final List<Integer> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(", "));
+    }
+
+    private interface RowSetter<T> {
 
-        return new HashSet<>(jdbcTemplate.query(sql, this::mapRowToGenre, filmId));
+        void setValues(PreparedStatement ps, T row) throws SQLException;
     }
 }
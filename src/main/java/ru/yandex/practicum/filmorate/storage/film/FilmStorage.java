@@ -2,14 +2,19 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmRating;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film add(final Film film);
 
+    List<Integer> addFilms(final List<Film> films);
+
     Film remove(final Film film);
 
     Film update(final Film film);
@@ -18,6 +23,18 @@ public interface FilmStorage {
 
     List<Film> getAllFilms();
 
+    List<Film> getFilmsPage(final Integer afterFilmId, final Integer limit);
+
+    void exportFilms(final Consumer<Film> filmConsumer);
+
+    List<Film> getPopularFilms(final Integer count);
+
+    List<Film> getFilmsByIds(final List<Integer> filmIds);
+
+    Map<Integer, Integer> getLikesCountByFilm();
+
+    void exportLikes(final LikeConsumer likeConsumer);
+
     List<FilmGenre> getAllGenres();
 
     FilmGenre getGenreById(final Integer genreId);
@@ -26,7 +43,13 @@ public interface FilmStorage {
 
     FilmRating getRatingById(final Integer ratingId);
 
+    boolean isLikeExist(final Integer userId, final Integer filmId);
+
     boolean addUserLikeToFilm(final Integer userId, final Integer filmId);
 
+    List<FilmLike> addLikes(final List<FilmLike> likes);
+
     boolean removeUserLike(final Integer userId, final Integer filmId);
+
+    void removeLikes(final List<FilmLike> likes);
 }
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Получатель строк таблицы movie_like без упаковки ID в Integer.
+ */
+@FunctionalInterface
+public interface LikeConsumer {
+
+    void accept(int userId, int filmId);
+}
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Справочники жанров и рейтингов, загруженные из базы данных при старте.
+ * Экземпляры жанров и рейтингов общие для всех фильмов и не должны изменяться.
+ * После изменения таблиц genre и rating (например, data.sql) справочник нужно обновить через {@link #refresh()}.
+ */
+@Component
+@Slf4j
+public class ReferenceDataRegistry {
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile ReferenceData referenceData = new ReferenceData(List.of(), List.of());
+
+    @Autowired
+    public ReferenceDataRegistry(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void refresh() {
+        List<FilmGenre> genres = jdbcTemplate.query("SELECT * FROM genre ORDER BY id", (rs, rowNum) ->
+                FilmGenre.builder()
+                        .id(rs.getInt("id"))
+                        .name(rs.getString("name"))
+                        .build());
+        List<FilmRating> ratings = jdbcTemplate.query("SELECT * FROM rating ORDER BY id", (rs, rowNum) ->
+                FilmRating.builder()
+                        .id(rs.getInt("id"))
+                        .name(rs.getString("name"))
+                        .build());
+
+        referenceData = new ReferenceData(genres, ratings);
+        log.info("Справочники загружены из базы данных по таблицам genre, rating. \n {} \n {}", genres, ratings);
+    }
+
+    public List<FilmGenre> getAllGenres() {
+        return referenceData.genres;
+    }
+
+    public FilmGenre getGenreById(final Integer genreId) {
+        FilmGenre genre = referenceData.genresById.get(genreId);
+        if (genre == null) {
+            throw new EmptyResultDataAccessException("Жанр не найден по ID: " + genreId, 1);
+        }
+        return genre;
+    }
+
+    public List<FilmRating> getAllRatings() {
+        return referenceData.ratings;
+    }
+
+    public FilmRating getRatingById(final Integer ratingId) {
+        FilmRating rating = referenceData.ratingsById.get(ratingId);
+        if (rating == null) {
+            throw new EmptyResultDataAccessException("Рейтинг не найден по ID: " + ratingId, 1);
+        }
+        return rating;
+    }
+
+    private static class ReferenceData {
+
+        private final List<FilmGenre> genres;
+        private final Map<Integer, FilmGenre> genresById;
+        private final List<FilmRating> ratings;
+        private final Map<Integer, FilmRating> ratingsById;
+
+        private ReferenceData(final List<FilmGenre> genres, final List<FilmRating> ratings) {
+            this.genres = List.copyOf(genres);
+            this.genresById = genres.stream()
+                    .collect(Collectors.toUnmodifiableMap(FilmGenre::getId, Function.identity()));
+            this.ratings = List.copyOf(ratings);
+            this.ratingsById = ratings.stream()
+                    .collect(Collectors.toUnmodifiableMap(FilmRating::getId, Function.identity()));
+        }
+    }
+}
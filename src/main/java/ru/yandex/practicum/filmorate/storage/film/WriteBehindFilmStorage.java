@@ -0,0 +1,594 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.LikeException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Отложенная запись лайков. При filmorate.likes.write-behind.enabled=true лайк и его отмена дописываются
+ * в локальный журнал и подтверждаются после fsync, общего для всех ожидающих в этот момент записей.
+ * Фоновый поток переносит журнал в таблицу movie_like пакетами, до переноса чтения фильмов видят лайки
+ * через наложение поверх базы данных. Журнал, оставшийся после падения, применяется при старте.
+ * В выключенном режиме все вызовы передаются хранилищу без изменений.
+ */
+@Component("writeBehindFilmStorage")
+@Slf4j
+public class WriteBehindFilmStorage implements FilmStorage {
+
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int RECORD_SIZE = 1 + 3 * Integer.BYTES;
+    private static final byte LIKE = 1;
+    private static final byte UNLIKE = 0;
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final boolean enabled;
+    private final Path journalDir;
+    private final long drainIntervalMs;
+    private final Map<Integer, Map<Integer, LikeMutation>> pendingByFilm = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock pendingLock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
+    private final Object drainLock = new Object();
+    private List<LikeMutation> journaled = new ArrayList<>();
+    private FileChannel segment;
+    private long segmentNumber;
+    private long writtenCount;
+    private long syncedCount;
+    private boolean syncing;
+    private volatile long drainGeneration;
+    private final List<LikeMutation> undrained = new ArrayList<>();
+    private final List<Path> undrainedSegments = new ArrayList<>();
+    private ScheduledExecutorService drainExecutor;
+
+    @Autowired
+    public WriteBehindFilmStorage(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                  @Qualifier("userDbStorage") UserStorage userStorage,
+                                  @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                  @Value("${filmorate.likes.write-behind.journal-dir:./db/journal}") String journalDir,
+                                  @Value("${filmorate.likes.write-behind.drain-interval-ms:200}") long drainIntervalMs) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.enabled = enabled;
+        this.journalDir = Paths.get(journalDir);
+        this.drainIntervalMs = drainIntervalMs;
+    }
+
+    /**
+     * Применяет к базе данных журнал, оставшийся от прошлого запуска, и открывает новый сегмент.
+     * При drainIntervalMs <= 0 фоновый перенос не запускается, журнал переносится только через {@link #flush()}.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Files.createDirectories(journalDir);
+        List<Path> segments = listSegments();
+        List<LikeMutation> replayed = new ArrayList<>();
+        for (Path journalSegment : segments) {
+            replayed.addAll(readSegment(journalSegment));
+        }
+        applyToStorage(replayed);
+        for (Path journalSegment : segments) {
+            Files.delete(journalSegment);
+        }
+        if (!segments.isEmpty()) {
+            log.info("Из журнала лайков после перезапуска применено {} записей из {} сегментов", replayed.size(),
+                    segments.size());
+            segmentNumber = segmentNumber(segments.get(segments.size() - 1)) + 1;
+        }
+        segment = openSegment(segmentNumber);
+
+        if (drainIntervalMs > 0) {
+            drainExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "like-journal-drain");
+                thread.setDaemon(true);
+                return thread;
+            });
+            drainExecutor.scheduleWithFixedDelay(this::drainQuietly, drainIntervalMs, drainIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        if (drainExecutor != null) {
+            drainExecutor.shutdown();
+            drainExecutor.awaitTermination(drainIntervalMs * 10, TimeUnit.MILLISECONDS);
+        }
+        flush();
+        synchronized (this) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Переносит все подтвержденные лайки из журнала в базу данных и удаляет перенесенные сегменты.
+     * Если запись в базу данных не удалась, лайки остаются в наложении и переносятся при следующем вызове.
+     */
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (drainLock) {
+            rotateSegment();
+            if (undrained.isEmpty()) {
+                return;
+            }
+
+            applyToStorage(undrained);
+            pendingLock.writeLock().lock();
+            try {
+                drainGeneration++;
+                for (LikeMutation mutation : undrained) {
+                    pendingByFilm.computeIfPresent(mutation.filmId, (filmId, likes) -> {
+                        likes.remove(mutation.userId, mutation);
+                        return likes.isEmpty() ? null : likes;
+                    });
+                }
+            } finally {
+                pendingLock.writeLock().unlock();
+            }
+            for (Path journalSegment : undrainedSegments) {
+                try {
+                    Files.deleteIfExists(journalSegment);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить перенесенный сегмент журнала лайков {}", journalSegment, e);
+                }
+            }
+            log.debug("Из журнала лайков в базу данных перенесено {} записей", undrained.size());
+            undrained.clear();
+            undrainedSegments.clear();
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingByFilm.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @Override
+    public Film add(final Film film) {
+        return filmStorage.add(film);
+    }
+
+    @Override
+    public List<Integer> addFilms(final List<Film> films) {
+        return filmStorage.addFilms(films);
+    }
+
+    @Override
+    public Film remove(final Film film) {
+        return filmStorage.remove(film);
+    }
+
+    @Override
+    public Film update(final Film film) {
+        return readWithPending(() -> List.of(filmStorage.update(film))).get(0);
+    }
+
+    @Override
+    public Film getFilmById(final Integer filmId) {
+        return readWithPending(() -> List.of(filmStorage.getFilmById(filmId))).get(0);
+    }
+
+    @Override
+    public List<Film> getAllFilms() {
+        return readWithPending(filmStorage::getAllFilms);
+    }
+
+    @Override
+    public List<Film> getFilmsPage(final Integer afterFilmId, final Integer limit) {
+        return readWithPending(() -> filmStorage.getFilmsPage(afterFilmId, limit));
+    }
+
+    /**
+     * Выгрузка читает фильмы потоком и не держит блокировку наложения все это время, поэтому копирует
+     * наложение целиком до чтения: лайк, перенесенный после копирования, уже есть в копии, а перенесенный
+     * до копирования - в прочитанных строках. Выгружаются все фильмы, так что лишнего копирования нет.
+     */
+    @Override
+    public void exportFilms(final Consumer<Film> filmConsumer) {
+        Map<Integer, Map<Integer, LikeMutation>> pending = getAllPending();
+        filmStorage.exportFilms(film -> filmConsumer.accept(withPending(film, pending.get(film.getId()))));
+    }
+
+    @Override
+    public List<Film> getPopularFilms(final Integer count) {
+        flush();
+        return filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(final List<Integer> filmIds) {
+        return readWithPending(() -> filmStorage.getFilmsByIds(filmIds));
+    }
+
+    @Override
+    public Map<Integer, Integer> getLikesCountByFilm() {
+        flush();
+        return filmStorage.getLikesCountByFilm();
+    }
+
+    @Override
+    public void exportLikes(final LikeConsumer likeConsumer) {
+        flush();
+        filmStorage.exportLikes(likeConsumer);
+    }
+
+    @Override
+    public List<FilmGenre> getAllGenres() {
+        return filmStorage.getAllGenres();
+    }
+
+    @Override
+    public FilmGenre getGenreById(final Integer genreId) {
+        return filmStorage.getGenreById(genreId);
+    }
+
+    @Override
+    public List<FilmRating> getAllRatings() {
+        return filmStorage.getAllRatings();
+    }
+
+    @Override
+    public FilmRating getRatingById(final Integer ratingId) {
+        return filmStorage.getRatingById(ratingId);
+    }
+
+    @Override
+    public boolean isLikeExist(final Integer userId, final Integer filmId) {
+        LikeMutation pending = getPendingMutation(userId, filmId);
+        return pending != null ? pending.liked : filmStorage.isLikeExist(userId, filmId);
+    }
+
+    /**
+     * В режиме отложенной записи пользователь проверяется до записи в журнал, а фильм - в FilmService
+     * по рейтингу в памяти. Лайк фильма или пользователя, удаленного до переноса журнала, будет пропущен.
+     */
+    @Override
+    public boolean addUserLikeToFilm(final Integer userId, final Integer filmId) {
+        if (!enabled) {
+            return filmStorage.addUserLikeToFilm(userId, filmId);
+        }
+        if (!userStorage.isUserExist(userId)) {
+            throw new UserNotFoundException("Пользователь не найден: " + userId);
+        }
+
+        return append(new LikeMutation(filmId, userId, true));
+    }
+
+    @Override
+    public List<FilmLike> addLikes(final List<FilmLike> likes) {
+        flush();
+        return filmStorage.addLikes(likes);
+    }
+
+    @Override
+    public boolean removeUserLike(final Integer userId, final Integer filmId) {
+        if (!enabled) {
+            return filmStorage.removeUserLike(userId, filmId);
+        }
+
+        return append(new LikeMutation(filmId, userId, false));
+    }
+
+    @Override
+    public void removeLikes(final List<FilmLike> likes) {
+        flush();
+        filmStorage.removeLikes(likes);
+    }
+
+    /**
+     * Записывает изменение, только если оно меняет текущее состояние лайка. Состояние без неперенесенной записи
+     * читается из базы данных вне блокировки журнала; если за это время пара изменилась или завершился перенос
+     * журнала, прочитанное состояние могло устареть, и проверка повторяется.
+     */
+    private boolean append(final LikeMutation mutation) {
+        while (true) {
+            long generation = drainGeneration;
+            LikeMutation pending = getPendingMutation(mutation.userId, mutation.filmId);
+            boolean isLiked = pending != null ? pending.liked : filmStorage.isLikeExist(mutation.userId,
+                    mutation.filmId);
+
+            long count;
+            synchronized (this) {
+                if (getPendingMutation(mutation.userId, mutation.filmId) != pending || drainGeneration != generation) {
+                    continue;
+                }
+                if (isLiked == mutation.liked) {
+                    return false;
+                }
+                count = write(mutation);
+            }
+            awaitDurable(count);
+            return true;
+        }
+    }
+
+    private long write(final LikeMutation mutation) {
+        ByteBuffer record = encode(mutation);
+        try {
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать лайк в журнал", e);
+        }
+        journaled.add(mutation);
+        pendingByFilm.computeIfAbsent(mutation.filmId, filmId -> new ConcurrentHashMap<>())
+                .put(mutation.userId, mutation);
+        return ++writtenCount;
+    }
+
+    /**
+     * Group commit: первый из ожидающих выполняет fsync за всех записавших к этому моменту,
+     * остальные ждут его результата.
+     */
+    private void awaitDurable(final long count) {
+        synchronized (syncLock) {
+            while (syncing && syncedCount < count) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Прервано ожидание записи журнала лайков на диск", e);
+                }
+            }
+            if (syncedCount >= count) {
+                return;
+            }
+            syncing = true;
+        }
+
+        long targetCount;
+        FileChannel channel;
+        synchronized (this) {
+            targetCount = writtenCount;
+            channel = segment;
+        }
+        boolean isSynced = false;
+        try {
+            channel.force(false);
+            isSynced = true;
+        } catch (ClosedChannelException e) {
+            // Сегмент закрыт при ротации, которая сама выполняет fsync перед закрытием
+            isSynced = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить журнал лайков на диск", e);
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                if (isSynced) {
+                    syncedCount = Math.max(syncedCount, targetCount);
+                }
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private void rotateSegment() {
+        synchronized (this) {
+            if (journaled.isEmpty()) {
+                return;
+            }
+
+            try {
+                segment.force(false);
+                segment.close();
+                undrainedSegments.add(segmentPath(segmentNumber));
+                segment = openSegment(++segmentNumber);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось переключить сегмент журнала лайков", e);
+            }
+            undrained.addAll(journaled);
+            journaled = new ArrayList<>();
+            synchronized (syncLock) {
+                syncedCount = Math.max(syncedCount, writtenCount);
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private void drainQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Не удалось перенести журнал лайков в базу данных, повтор через {} мс", drainIntervalMs, e);
+        }
+    }
+
+    /**
+     * Применяет к базе данных последнее состояние каждой пары фильм-пользователь. Запись идемпотентна,
+     * поэтому сегмент, перенесенный до падения, но не удаленный, можно применить повторно.
+     */
+    private void applyToStorage(final List<LikeMutation> mutations) {
+        Map<FilmLike, Boolean> lastStates = new LinkedHashMap<>();
+        for (LikeMutation mutation : mutations) {
+            lastStates.put(new FilmLike(mutation.filmId, mutation.userId), mutation.liked);
+        }
+        List<FilmLike> addedLikes = new ArrayList<>();
+        List<FilmLike> removedLikes = new ArrayList<>();
+        lastStates.forEach((like, liked) -> (liked ? addedLikes : removedLikes).add(like));
+
+        if (!removedLikes.isEmpty()) {
+            filmStorage.removeLikes(removedLikes);
+        }
+        if (addedLikes.isEmpty()) {
+            return;
+        }
+        try {
+            filmStorage.addLikes(addedLikes);
+        } catch (FilmNotFoundException | UserNotFoundException | LikeException e) {
+            for (FilmLike like : addedLikes) {
+                try {
+                    filmStorage.addLikes(List.of(like));
+                } catch (FilmNotFoundException | UserNotFoundException likeException) {
+                    log.warn("Лайк пользователя ID {} фильму ID {} из журнала пропущен: фильм или пользователь удален",
+                            like.getUserId(), like.getFilmId());
+                }
+            }
+        }
+    }
+
+    private LikeMutation getPendingMutation(final Integer userId, final Integer filmId) {
+        Map<Integer, LikeMutation> pending = pendingByFilm.get(filmId);
+        return pending == null ? null : pending.get(userId);
+    }
+
+    /**
+     * Читает фильмы из базы данных и накладывает на них только их собственные неперенесенные лайки.
+     * Перенос журнала удаляет записи из наложения под блокировкой записи, а чтение идет под блокировкой
+     * чтения: лайк, перенесенный после чтения строк, еще есть в наложении, а перенесенный до - уже в строках.
+     */
+    private List<Film> readWithPending(final Supplier<List<Film>> read) {
+        pendingLock.readLock().lock();
+        try {
+            List<Film> films = read.get();
+            if (pendingByFilm.isEmpty()) {
+                return films;
+            }
+            return films.stream()
+                    .map(film -> withPending(film, pendingByFilm.get(film.getId())))
+                    .collect(Collectors.toList());
+        } finally {
+            pendingLock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Map<Integer, LikeMutation>> getAllPending() {
+        Map<Integer, Map<Integer, LikeMutation>> pending = new HashMap<>();
+        pendingByFilm.forEach((filmId, likes) -> pending.put(filmId, new HashMap<>(likes)));
+        return pending;
+    }
+
+    private static Film withPending(final Film film, final Map<Integer, LikeMutation> pending) {
+        if (pending == null) {
+            return film;
+        }
+
+        SortedIntSet usersLikes = new SortedIntSet(film.getUsersLikes());
+        for (LikeMutation mutation : pending.values()) {
+            if (mutation.liked) {
+                usersLikes.addInt(mutation.userId);
+            } else {
+                usersLikes.removeInt(mutation.userId);
+            }
+        }
+        film.setUsersLikes(usersLikes);
+        return film;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Читает записи сегмента до первой неполной или поврежденной: такая запись могла остаться
+     * только от падения во время записи, и ее лайк не был подтвержден.
+     */
+    private static List<LikeMutation> readSegment(final Path journalSegment) throws IOException {
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(journalSegment));
+        List<LikeMutation> mutations = new ArrayList<>(records.remaining() / RECORD_SIZE);
+
+        while (records.remaining() >= RECORD_SIZE) {
+            int position = records.position();
+            byte operation = records.get();
+            int filmId = records.getInt();
+            int userId = records.getInt();
+            if (records.getInt() != checksum(records.array(), position)) {
+                log.warn("Журнал лайков {} прочитан до поврежденной записи на позиции {}", journalSegment, position);
+                break;
+            }
+            mutations.add(new LikeMutation(filmId, userId, operation == LIKE));
+        }
+        return mutations;
+    }
+
+    private static ByteBuffer encode(final LikeMutation mutation) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(mutation.liked ? LIKE : UNLIKE).putInt(mutation.filmId).putInt(mutation.userId);
+        record.putInt(checksum(record.array(), 0));
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(final byte[] records, final int position) {
+        CRC32 crc = new CRC32();
+        crc.update(records, position, RECORD_SIZE - Integer.BYTES);
+        return (int) crc.getValue();
+    }
+
+    private FileChannel openSegment(final long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(final long number) {
+        return journalDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentNumber(final Path journalSegment) {
+        String fileName = journalSegment.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class LikeMutation {
+
+        private final int filmId;
+        private final int userId;
+        private final boolean liked;
+
+        private LikeMutation(final int filmId, final int userId, final boolean liked) {
+            this.filmId = filmId;
+            this.userId = userId;
+            this.liked = liked;
+        }
+    }
+}
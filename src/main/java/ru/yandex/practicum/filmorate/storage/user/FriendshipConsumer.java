@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+/**
+ * Получатель строк таблицы friends без упаковки ID в Integer.
+ */
+@FunctionalInterface
+public interface FriendshipConsumer {
+
+    void accept(int userId, int friendId, boolean confirmed);
+}
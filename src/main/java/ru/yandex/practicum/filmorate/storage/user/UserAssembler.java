@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.model.SortedIntSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Собирает пользователей вместе с друзьями и заявками в друзья за постоянное число запросов:
+ * пользователи одним запросом, затем строки friends всех выбранных пользователей пакетно
+ * по возрастанию ID друга, чтобы {@link SortedIntSet} заполнялись дописыванием в конец.
+ * Все чтения пользователей из {@link UserDbStorage} должны идти через этот класс.
+ */
+class UserAssembler {
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    static final String SELECT_USERS = "SELECT u.id, u.name, u.email, u.login, u.birthday FROM users u ";
+    private static final String SELECT_FRIENDS = "SELECT user_id, friend_id, status FROM friends ";
+    static final String SELECT_FRIENDS_BY_USER_IDS = SELECT_FRIENDS +
+            "WHERE user_id IN (:ids) ORDER BY user_id, friend_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    UserAssembler(final JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    List<User> findAll() {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + "ORDER BY u.id", this::mapRowToUser);
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        FriendsCollector friends = new FriendsCollector(indexById(users));
+        jdbcTemplate.query(SELECT_FRIENDS + "ORDER BY user_id, friend_id", friends::add);
+        friends.finish();
+        return users;
+    }
+
+    /**
+     * @param condition часть запроса после FROM по таблице users (алиас u), например "WHERE u.id = ?"
+     */
+    List<User> find(final String condition, final Object... args) {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + condition, this::mapRowToUser, args);
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        Map<Integer, User> usersById = indexById(users);
+        List<Integer> userIds = new ArrayList<>(usersById.keySet());
+        FriendsCollector friends = new FriendsCollector(usersById);
+
+        for (int from = 0; from < userIds.size(); from += MAX_IDS_PER_QUERY) {
+            MapSqlParameterSource params = new MapSqlParameterSource("ids",
+                    userIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, userIds.size())));
+
+            namedJdbcTemplate.query(SELECT_FRIENDS_BY_USER_IDS, params, friends::add);
+        }
+        friends.finish();
+        return users;
+    }
+
+    private Map<Integer, User> indexById(final List<User> users) {
+        Map<Integer, User> usersById = new LinkedHashMap<>();
+        for (User user : users) {
+            usersById.put(user.getId(), user);
+        }
+        return usersById;
+    }
+
+    private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
+        return User.builder()
+                .id(rs.getInt("id"))
+                .name(rs.getString("name"))
+                .email(rs.getString("email"))
+                .login(rs.getString("login"))
+                .birthday(rs.getDate("birthday").toLocalDate())
+                .friendsRequests(new SortedIntSet())
+                .friends(new SortedIntSet())
+                .build();
+    }
+
+    /**
+     * Собирает строки friends, упорядоченные по ID пользователя и друга, в отдельные {@link SortedIntSet}
+     * друзей и заявок и отдает их пользователю сеттерами, когда строки пользователя закончились.
+     */
+    private static class FriendsCollector {
+
+        private final Map<Integer, User> usersById;
+        private int userId;
+        private SortedIntSet friends;
+        private SortedIntSet friendsRequests;
+
+        private FriendsCollector(final Map<Integer, User> usersById) {
+            this.usersById = usersById;
+        }
+
+        private void add(final ResultSet rs) throws SQLException {
+            int rowUserId = rs.getInt("user_id");
+            if (friends == null || rowUserId != userId) {
+                finish();
+                userId = rowUserId;
+                friends = new SortedIntSet();
+                friendsRequests = new SortedIntSet();
+            }
+            if (rs.getBoolean("status")) {
+                friends.addInt(rs.getInt("friend_id"));
+            } else {
+                friendsRequests.addInt(rs.getInt("friend_id"));
+            }
+        }
+
+        private void finish() {
+            if (friends != null) {
+                User user = usersById.get(userId);
+                user.setFriends(friends);
+                user.setFriendsRequests(friendsRequests);
+                friends = null;
+                friendsRequests = null;
+            }
+        }
+    }
+}
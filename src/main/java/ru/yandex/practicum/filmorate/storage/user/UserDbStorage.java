@@ -2,45 +2,100 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Component("userDbStorage")
 @Slf4j
 public class UserDbStorage implements UserStorage {
 
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    private static final int MAX_ROWS_PER_TRANSACTION = 1000;
+    static final String CONFIRM_FRIENDSHIP = "MERGE INTO friends (user_id, friend_id, status) " +
+            "KEY (user_id, friend_id) VALUES (?, ?, TRUE)";
+    static final String INSERT_FRIEND_REQUEST = "INSERT INTO friends (user_id, friend_id, status) " +
+            "SELECT CAST(? AS INTEGER), CAST(? AS INTEGER), FALSE FROM DUAL " +
+            "WHERE NOT EXISTS (SELECT 1 FROM friends WHERE user_id = ? AND friend_id = ?)";
+    static final String ACCEPT_FRIEND_REQUEST =
+            "UPDATE friends SET status = TRUE WHERE user_id = ? AND friend_id = ? AND status = FALSE";
+    static final String DELETE_FRIENDSHIP = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
     private final JdbcTemplate jdbcTemplate;
+    private final UserAssembler userAssembler;
+    private final SimpleJdbcInsert userInsert;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userAssembler = new UserAssembler(jdbcTemplate);
+        this.userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingGeneratedKeyColumns("id");
     }
 
     @Override
     public User addUser(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("id");
-
-        Integer dbUserId = simpleJdbcInsert.executeAndReturnKey(user.toMap()).intValue();
+        Integer dbUserId = userInsert.executeAndReturnKey(user.toMap()).intValue();
         user.setId(dbUserId);
 
         log.info("Пользователь добавлен в базу данных в таблицу users по ID: {} \n {}", dbUserId, user);
         return user;
     }
 
+    /**
+     * Добавляет пользователей пакетами JDBC, по одной транзакции на каждые {@link #MAX_ROWS_PER_TRANSACTION}
+     * пользователей. Друзья и заявки в друзья при пакетном добавлении не сохраняются.
+     */
+    @Override
+    public List<Integer> addUsers(final List<User> users) {
+        String sql = "INSERT INTO users (name, email, login, birthday) VALUES (?, ?, ?, ?)";
+
+        for (int from = 0; from < users.size(); from += MAX_ROWS_PER_TRANSACTION) {
+            List<User> chunk = users.subList(from, Math.min(from + MAX_ROWS_PER_TRANSACTION, users.size()));
+
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute(
+                    (ConnectionCallback<Void>) connection -> {
+                        try (PreparedStatement ps = connection.prepareStatement(sql, new String[]{"ID"})) {
+                            for (User user : chunk) {
+                                ps.setString(1, user.getName());
+                                ps.setString(2, user.getEmail());
+                                ps.setString(3, user.getLogin());
+                                ps.setDate(4, Date.valueOf(user.getBirthday()));
+                                ps.addBatch();
+                            }
+                            ps.executeBatch();
+
+                            try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
+                                for (int i = 0; generatedKeys.next(); i++) {
+                                    chunk.get(i).setId(generatedKeys.getInt(1));
+                                }
+                            }
+                        }
+                        return null;
+                    }));
+        }
+
+        log.info("Пакетно добавлено {} пользователей в базу данных в таблицу users", users.size());
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
     @Override
     public User removeUser(User user) {
         String sqlDeleteUser = "DELETE FROM users WHERE id = ?";
@@ -51,29 +106,69 @@ public class UserDbStorage implements UserStorage {
         return user;
     }
 
+    /**
+     * Пользователь добавляет друга: его связь становится подтвержденной, а у друга появляется заявка,
+     * если связи в обратную сторону еще нет. Обе строки пишутся в одной транзакции.
+     */
+    @Override
+    public boolean requestFriendship(final Integer userId, final Integer friendId) {
+        try {
+            Boolean isRequested = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(CONFIRM_FRIENDSHIP, userId, friendId);
+                try {
+                    return jdbcTemplate.update(INSERT_FRIEND_REQUEST, friendId, userId, friendId, userId) == 1;
+                } catch (DuplicateKeyException e) {
+                    // обратную связь параллельно создал другой запрос
+                    return false;
+                }
+            });
+            log.info("Пользователь ID {} добавил в друзья пользователя ID {}", userId, friendId);
+            return Boolean.TRUE.equals(isRequested);
+        } catch (DataIntegrityViolationException e) {
+            throw new UserNotFoundException("Пользователь не найден: " + (isUserExist(userId) ? friendId : userId),
+                    e);
+        }
+    }
+
     @Override
-    public boolean removeFriendById(Integer userId, Integer friendId) {
-        String sqlDeleteQuery = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
-        return jdbcTemplate.update(sqlDeleteQuery, userId, friendId) > 1;
+    public boolean acceptFriendship(final Integer userId, final Integer friendId) {
+        boolean isAccepted = jdbcTemplate.update(ACCEPT_FRIEND_REQUEST, userId, friendId) == 1;
+        if (isAccepted) {
+            log.info("Пользователь ID {} принял заявку в друзья от пользователя ID {}", userId, friendId);
+        }
+        return isAccepted;
     }
 
+    @Override
+    public boolean removeFriendship(final Integer userId, final Integer friendId) {
+        boolean isRemoved = jdbcTemplate.update(DELETE_FRIENDSHIP, userId, friendId) == 1;
+        if (isRemoved) {
+            log.info("Пользователь ID {} удалил из друзей пользователя ID {}", userId, friendId);
+        }
+        return isRemoved;
+    }
+
+    /**
+     * Обновляет только профиль пользователя: связи в friends меняются отдельными запросами дружбы.
+     * Пользователь после обновления не перечитывается.
+     */
     @Override
     public User updateUser(User user) {
         String sql = "UPDATE users SET name = ?, email = ?, login = ?, birthday = ? WHERE id = ?";
-        jdbcTemplate.update(sql, user.getName(), user.getEmail(), user.getLogin(), user.getBirthday(), user.getId());
 
-        saveUserFriendsToDb(user);
+        int updatedRows = jdbcTemplate.update(sql, user.getName(), user.getEmail(), user.getLogin(),
+                user.getBirthday(), user.getId());
+        if (updatedRows == 0) {
+            throw new UserNotFoundException("Пользователь не найден: " + user.getId());
+        }
 
-        String sqlReadQuery = "SELECT * FROM users WHERE id = ?";
-        User updatedUser = jdbcTemplate.queryForObject(sqlReadQuery, this::mapRowToUser, user.getId());
-        log.info("Пользователь успешно обновлен в базе данных по таблице users. \n {}", updatedUser);
-        return updatedUser;
+        log.info("Пользователь успешно обновлен в базе данных по таблице users. \n {}", user);
+        return user;
     }
 
     @Override
     public User getUserById(Integer userId) {
-        String sqlReadQuery = "SELECT * FROM users WHERE id = ?";
-        User user = jdbcTemplate.queryForObject(sqlReadQuery, this::mapRowToUser, userId);
+        User user = getUserFromDb(userId);
 
         log.info("Получен пользователь из базы данных по таблице users. \n {}", user);
         return user;
@@ -81,87 +176,64 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> getAllUsers() {
-        String sqlReadQuery = "SELECT * FROM users";
-        List<User> users = jdbcTemplate.query(sqlReadQuery, this::mapRowToUser);
+        List<User> users = userAssembler.findAll();
         log.info("Получены пользователи из базы данных по таблице users. {}", users);
         return users;
     }
 
     @Override
-    public boolean isUserExist(Integer userId) {
-        String sql = "SELECT COUNT(id) FROM users WHERE id = ?";
-        SqlRowSet rs = jdbcTemplate.queryForRowSet(sql, userId);
-        rs.next();
-        return rs.getInt(1) > 0;
+    public List<User> getUsersPage(final Integer afterUserId, final Integer limit) {
+        List<User> users = userAssembler.find("WHERE u.id > ? ORDER BY u.id LIMIT ?", afterUserId, limit);
+        log.info("Получена страница из {} пользователей после ID: {} из базы данных по таблице users.",
+                users.size(), afterUserId);
+        return users;
     }
 
-    private void addToUserFriendsFromDb(User user) {
-        Integer userId = user.getId();
-        String sql = "SELECT * FROM friends WHERE user_id = ?";
-
-        Set<Integer> friendsRequests = new HashSet<>();
-        Set<Integer> friends = new HashSet<>();
+    @Override
+    public List<User> getUsersByIds(final List<Integer> userIds) {
+        Map<Integer, User> usersById = new HashMap<>();
 
-        jdbcTemplate.query(sql, rs -> {
-            if (rs.getBoolean("status")) {
-                friends.add(rs.getInt("friend_id"));
-            } else {
-                friendsRequests.add(rs.getInt("friend_id"));
+        for (int from = 0; from < userIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<Integer> ids = userIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, userIds.size()));
+            for (User user : userAssembler.find(idsCondition(ids.size()), ids.toArray())) {
+                usersById.put(user.getId(), user);
             }
-        }, userId);
+        }
 
-        user.setFriends(friends);
-        user.setFriendsRequests(friendsRequests);
+        List<User> users = userIds.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        log.info("Получены пользователи по списку ID: {} из базы данных по таблице users.", userIds);
+        return users;
     }
 
-    private void saveUserFriendsToDb(User user) {
-        List<Integer> friendsRequests = new ArrayList<>(user.getFriendsRequests());
-        List<Integer> friends = new ArrayList<>(user.getFriends());
-        Integer userId = user.getId();
-
-        String sql = "INSERT INTO friends (user_id, friend_id, status) " +
-                "VALUES (?, ?, ?)";
-
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Integer friendId = friendsRequests.get(i);
-                ps.setInt(1, userId);
-                ps.setInt(2, friendId);
-                ps.setBoolean(3, false);
-            }
+    @Override
+    public void exportFriendships(final FriendshipConsumer friendshipConsumer) {
+        String sql = "SELECT user_id, friend_id, status FROM friends ORDER BY user_id, friend_id";
 
-            @Override
-            public int getBatchSize() {
-                return friendsRequests.size();
-            }
+        jdbcTemplate.query(sql, rs -> {
+            friendshipConsumer.accept(rs.getInt("user_id"), rs.getInt("friend_id"), rs.getBoolean("status"));
         });
+        log.info("Выгружены связи пользователей из базы данных по таблице friends.");
+    }
 
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Integer friendId = friends.get(i);
-                ps.setInt(1, userId);
-                ps.setInt(2, friendId);
-                ps.setBoolean(3, true);
-            }
+    @Override
+    public boolean isUserExist(Integer userId) {
+        String sql = "SELECT COUNT(id) FROM users WHERE id = ?";
+        SqlRowSet rs = jdbcTemplate.queryForRowSet(sql, userId);
+        rs.next();
+        return rs.getInt(1) > 0;
+    }
 
-            @Override
-            public int getBatchSize() {
-                return friends.size();
-            }
-        });
+    /**
+     * Условие выборки пользователей по списку из count ID для {@link UserAssembler#find}.
+     */
+    static String idsCondition(final int count) {
+        return "WHERE u.id IN (" + String.join(", ", Collections.nCopies(count, "?")) + ")";
     }
 
-    private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
-        User user = User.builder()
-                .id(rs.getInt("id"))
-                .name(rs.getString("name"))
-                .email(rs.getString("email"))
-                .login(rs.getString("login"))
-                .birthday(rs.getDate("birthday").toLocalDate())
-                .build();
-        addToUserFriendsFromDb(user);
-        return user;
+    private User getUserFromDb(final Integer userId) {
+        return DataAccessUtils.requiredSingleResult(userAssembler.find("WHERE u.id = ?", userId));
     }
 }
@@ -8,9 +8,15 @@ public interface UserStorage {
 
     User addUser(final User user);
 
+    List<Integer> addUsers(final List<User> users);
+
     User removeUser(final User user);
 
-    boolean removeFriendById(final Integer userId, final Integer friendId);
+    boolean requestFriendship(final Integer userId, final Integer friendId);
+
+    boolean acceptFriendship(final Integer userId, final Integer friendId);
+
+    boolean removeFriendship(final Integer userId, final Integer friendId);
 
     User updateUser(final User user);
 
@@ -18,5 +24,11 @@ public interface UserStorage {
 
     List<User> getAllUsers();
 
+    List<User> getUsersPage(final Integer afterUserId, final Integer limit);
+
+    List<User> getUsersByIds(final List<Integer> userIds);
+
+    void exportFriendships(final FriendshipConsumer friendshipConsumer);
+
     boolean isUserExist(final Integer userId);
 }
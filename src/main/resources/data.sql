@@ -1,5 +0,0 @@
-INSERT INTO rating (name)
-VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
-
-INSERT INTO genre (name)
-VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'), ('Боевик');
\ No newline at end of file
@@ -39,4 +39,10 @@ name varchar(20) UNIQUE
 CREATE TABLE IF NOT EXISTS movie_genre (
 movie_id int4 NOT NULL REFERENCES movies(id) ON DELETE CASCADE,
 genre_id int4 NOT NULL REFERENCES genre(id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+INSERT INTO rating (name)
+VALUES ('G'), ('PG'), ('PG-13'), ('R'), ('NC-17');
+
+INSERT INTO genre (name)
+VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'), ('Боевик');
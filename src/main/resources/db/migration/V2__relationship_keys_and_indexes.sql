@@ -0,0 +1,35 @@
+-- До появления ключей в таблицах связей могли накопиться дубликаты и пустые ссылки.
+DELETE FROM movie_like WHERE movie_id IS NULL OR user_id IS NULL;
+
+DELETE FROM movie_like a
+WHERE EXISTS (SELECT 1 FROM movie_like b
+              WHERE b.movie_id = a.movie_id AND b.user_id = a.user_id AND b._ROWID_ < a._ROWID_);
+
+DELETE FROM friends WHERE user_id IS NULL OR friend_id IS NULL;
+
+UPDATE friends SET status = FALSE WHERE status IS NULL;
+
+-- из повторяющихся строк дружбы остается подтвержденная
+DELETE FROM friends a
+WHERE EXISTS (SELECT 1 FROM friends b
+              WHERE b.user_id = a.user_id AND b.friend_id = a.friend_id
+                AND (b.status > a.status OR (b.status = a.status AND b._ROWID_ < a._ROWID_)));
+
+DELETE FROM movie_genre a
+WHERE EXISTS (SELECT 1 FROM movie_genre b
+              WHERE b.movie_id = a.movie_id AND b.genre_id = a.genre_id AND b._ROWID_ < a._ROWID_);
+
+ALTER TABLE movie_like ALTER COLUMN movie_id SET NOT NULL;
+ALTER TABLE movie_like ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE movie_like ADD CONSTRAINT movie_like_pk PRIMARY KEY (movie_id, user_id);
+CREATE INDEX movie_like_user_movie_idx ON movie_like (user_id, movie_id);
+
+ALTER TABLE friends ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE friends ALTER COLUMN friend_id SET NOT NULL;
+ALTER TABLE friends ALTER COLUMN status SET DEFAULT FALSE;
+ALTER TABLE friends ALTER COLUMN status SET NOT NULL;
+ALTER TABLE friends ADD CONSTRAINT friends_pk PRIMARY KEY (user_id, friend_id);
+CREATE INDEX friends_friend_user_idx ON friends (friend_id, user_id);
+
+ALTER TABLE movie_genre ADD CONSTRAINT movie_genre_pk PRIMARY KEY (movie_id, genre_id);
+CREATE INDEX movie_genre_genre_movie_idx ON movie_genre (genre_id, movie_id);
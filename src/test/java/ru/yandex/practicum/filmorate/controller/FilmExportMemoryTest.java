@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Выгрузка нескольких миллионов строк каталога через HTTP при куче в 64 МБ: если выгрузка или запрос к базе
+ * данных держат весь каталог в памяти, тест падает с OutOfMemoryError. Запускается только в профиле loadtest
+ * отдельной JVM с -Xmx64m, база данных лежит в файле, чтобы данные не занимали кучу.
+ */
+@Tag("large")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "logging.level.ru.yandex.practicum.filmorate=info",
+        "logging.level.org.springframework.web.servlet.DispatcherServlet=info"
+})
+class FilmExportMemoryTest {
+
+    private static final int USERS = 10_000;
+    private static final int FILMS = 1_000_000;
+    private static final int LIKES_PER_FILM = 2;
+    private static final int ROWS_PER_INSERT = 100_000;
+
+    @TempDir
+    static Path databaseDir;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void fileDatabase(final DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:" + databaseDir.resolve("filmorate")
+                + ";mode=MySQL;CACHE_SIZE=4096");
+    }
+
+    @Test
+    void testExportFilms_ShouldStreamMillionsOfRows_WhenHeapIsSmall() throws Exception {
+        // given
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) "
+                + "SELECT CONCAT('user', x, '@mail.test'), CONCAT('user', x), DATE '1990-01-01' "
+                + "FROM SYSTEM_RANGE(1, ?)", USERS);
+        for (int from = 1; from <= FILMS; from += ROWS_PER_INSERT) {
+            int to = Math.min(from + ROWS_PER_INSERT - 1, FILMS);
+            jdbcTemplate.update("INSERT INTO movies (id, title, description, duration, release_date, rating_id) "
+                    + "SELECT x, CONCAT('Film ', x), CONCAT('About film ', x), 90, DATE '2000-01-01', 1 + MOD(x, 5) "
+                    + "FROM SYSTEM_RANGE(?, ?)", from, to);
+            jdbcTemplate.update("INSERT INTO movie_genre (movie_id, genre_id) "
+                    + "SELECT x, 1 + MOD(x, 6) FROM SYSTEM_RANGE(?, ?)", from, to);
+            // соседние фильмы лайкают соседние пользователи, чтобы вставка шла по порядку обоих индексов
+            for (int i = 0; i < LIKES_PER_FILM; i++) {
+                jdbcTemplate.update("INSERT INTO movie_like (movie_id, user_id) "
+                        + "SELECT x, 1 + MOD((x - 1) / ? + ?, ?) FROM SYSTEM_RANGE(?, ?)",
+                        FILMS / USERS, i, USERS, from, to);
+            }
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/films/export"))
+                .GET()
+                .build();
+        // do
+        HttpResponse<InputStream> response = HttpClient.newHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long lines = 0;
+        long likes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode film = objectMapper.readTree(line);
+                assertEquals(lines + 1, film.get("id").asLong(), "Фильмы выгружены не по порядку ID");
+                likes += film.get("usersLikes").size();
+                lines++;
+            }
+        }
+        // expect
+        assertEquals(200, response.statusCode(), "Выгрузка должна завершиться успешно");
+        assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(null),
+                "Неверный тип содержимого выгрузки");
+        assertEquals(FILMS, lines, "Выгружены не все фильмы");
+        assertEquals((long) FILMS * LIKES_PER_FILM, likes, "Выгружены не все лайки");
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:film-export;mode=MySQL")
+@AutoConfigureMockMvc
+class FilmExportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void testExportFilms_ShouldStreamOneJsonObjectPerLine_WhenFilmsHaveGenresAndLikes() throws Exception {
+        // given
+        Integer userId = userService.addUser(new User(null, "export@mail.test", "export", "export",
+                LocalDate.parse("1990-01-01"), new HashSet<>(), new HashSet<>())).getId();
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Integer filmId = filmService.add(new Film(null, "Film\n" + i, "About film " + i,
+                    LocalDate.parse("2000-01-01"), 90, new FilmRating(1), Set.of(new FilmGenre(1 + i)),
+                    new HashSet<>())).getId();
+            filmService.addLike(filmId, userId);
+            filmIds.add(filmId);
+        }
+        // do
+        MvcResult started = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+        // expect
+        String[] lines = body.split("\n");
+        assertEquals(filmIds.size(), lines.length, "Каждый фильм должен занимать одну строку выгрузки");
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode film = objectMapper.readTree(lines[i]);
+            assertTrue(film.isObject(), "Строка выгрузки должна быть JSON объектом: " + lines[i]);
+            assertEquals(filmIds.get(i), film.get("id").asInt(), "Фильмы выгружены не по порядку ID");
+            assertEquals("Film\n" + i, film.get("name").asText(), "Название фильма выгружено неверно");
+            assertEquals(1 + i, film.get("genres").get(0).get("id").asInt(), "Жанр фильма выгружен неверно");
+            assertEquals(userId, film.get("usersLikes").get(0).asInt(), "Лайк фильма выгружен неверно");
+        }
+    }
+}
@@ -6,17 +6,38 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.service.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.service.FilmLocks;
+import ru.yandex.practicum.filmorate.service.FilmRecommender;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.storage.film.CachingFilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,11 +46,38 @@ import static org.junit.jupiter.api.Assertions.*;
 class FilmServiceTest {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private FilmService filmService;
+    private FilmLeaderboard filmLeaderboard;
+    private FilmRecommender filmRecommender;
+    private FilmSimilarityIndex filmSimilarityIndex;
 
     @BeforeEach
     public void newController() {
-        filmService = new FilmService(new FilmDbStorage(jdbcTemplate), new UserDbStorage(jdbcTemplate));
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate, referenceDataRegistry, transactionManager);
+        FilmLocks filmLocks = new FilmLocks();
+        filmLeaderboard = new FilmLeaderboard(filmStorage, filmLocks);
+        filmLeaderboard.rebuild();
+        filmRecommender = new FilmRecommender(filmStorage, filmLocks);
+        filmRecommender.rebuild();
+        filmSimilarityIndex = new FilmSimilarityIndex(filmStorage, filmLocks);
+        filmSimilarityIndex.rebuild();
+        filmService = new FilmService(new CachingFilmStorage(filmStorage, 100),
+                new UserDbStorage(jdbcTemplate, transactionManager), filmLeaderboard, filmRecommender,
+                filmSimilarityIndex, filmLocks);
+    }
+
+    private Film makeFilm() {
+        return new Film(null, "Java Developer", "About strong Java developer",
+                LocalDate.parse("2000-01-01"), 60, new FilmRating(1), new HashSet<>(), new HashSet<>());
+    }
+
+    private Integer addUser(final String login) {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) VALUES (?, ?, ?)",
+                login + "@mail.test", login, LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE login = ?", Integer.class, login);
     }
 
     @Test
@@ -54,4 +102,364 @@ class FilmServiceTest {
         // expect
         assertDoesNotThrow(() -> filmService.isValidFilm(film), "Валидация не должна выбрасывать исключение");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetPopularFilmsByLikesShouldFollowLikesAddedAndRemovedThroughService() {
+        // given
+        Integer userId1 = addUser("user1");
+        Integer userId2 = addUser("user2");
+        Integer filmId1 = filmService.add(makeFilm()).getId();
+        Integer filmId2 = filmService.add(makeFilm()).getId();
+        Integer filmId3 = filmService.add(makeFilm()).getId();
+        // do
+        filmService.addLike(filmId2, userId1);
+        filmService.addLike(filmId3, userId1);
+        filmService.addLike(filmId3, userId2);
+        filmService.addLike(filmId1, userId1);
+        filmService.removeLike(filmId1, userId1);
+        // expect
+        assertEquals(List.of(filmId3, filmId2, filmId1), filmService.getPopularFilmsByLikes(10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()), "Порядок популярных фильмов не совпадает");
+        assertEquals(List.of(filmId3), filmService.getPopularFilmsByLikes(1).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()), "Топ из одного фильма не совпадает");
+        assertTrue(filmLeaderboard.isConsistentWithStorage(), "Рейтинг в памяти расходится с базой данных");
+    }
+
+    @Test
+    public void testAddLikeShouldReturnLikesCountAndIgnoreRepeatedLikes() {
+        // given
+        Integer userId1 = addUser("user1");
+        Integer userId2 = addUser("user2");
+        Integer filmId = filmService.add(makeFilm()).getId();
+        // expect
+        assertEquals(1, filmService.addLike(filmId, userId1), "Количество лайков после первого лайка не совпадает");
+        assertEquals(1, filmService.addLike(filmId, userId1), "Повторный лайк не должен менять количество лайков");
+        assertEquals(2, filmService.addLike(filmId, userId2), "Количество лайков после второго лайка не совпадает");
+        assertEquals(1, filmService.removeLike(filmId, userId1), "Количество лайков после удаления не совпадает");
+        assertEquals(1, filmService.removeLike(filmId, userId1), "Повторное удаление не должно менять количество лайков");
+        assertThrows(UserNotFoundException.class, () -> filmService.addLike(filmId, -1),
+                "Лайк несуществующего пользователя должен приводить к ошибке");
+        assertThrows(FilmNotFoundException.class, () -> filmService.addLike(-1, userId1),
+                "Лайк несуществующему фильму должен приводить к ошибке");
+        assertTrue(filmLeaderboard.isConsistentWithStorage(), "Рейтинг в памяти расходится с базой данных");
+        assertTrue(filmRecommender.isConsistentWithStorage(), "Совместные лайки расходятся с базой данных");
+    }
+
+    @Test
+    public void testLeaderboardShouldCountEveryLikeWhenLikesAreAddedConcurrently() throws InterruptedException {
+        // given
+        FilmLeaderboard leaderboard = new FilmLeaderboard(new FilmDbStorage(jdbcTemplate,
+                new ReferenceDataRegistry(jdbcTemplate), transactionManager), new FilmLocks());
+        int threads = 8;
+        int likesPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // do
+        for (int i = 0; i < threads; i++) {
+            int threadNumber = i;
+            executor.execute(() -> {
+                for (int j = 0; j < likesPerThread; j++) {
+                    leaderboard.incrementLikes(1);
+                    leaderboard.incrementLikes(2 + threadNumber);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Потоки не завершились");
+        // expect
+        assertEquals(threads * likesPerThread, leaderboard.getLikesCount(1), "Потеряны лайки популярного фильма");
+        assertEquals(List.of(1, 2, 3), leaderboard.getTopFilmIds(3), "Порядок фильмов в рейтинге не совпадает");
+        assertEquals(threads + 1, leaderboard.getTopFilmIds(100).size(), "Фильмы в рейтинге задублированы");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testLeaderboardShouldMatchStorageWhenSameLikeIsAddedAndRemovedConcurrently()
+            throws InterruptedException {
+        // given
+        int threads = 4;
+        Integer userId = addUser("toggle_user");
+        Integer filmId = filmService.add(makeFilm()).getId();
+        AtomicInteger minLikes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // do
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 200; j++) {
+                    minLikes.accumulateAndGet(filmService.addLike(filmId, userId), Math::min);
+                    minLikes.accumulateAndGet(filmService.removeLike(filmId, userId), Math::min);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Потоки не завершились");
+            // expect
+            assertEquals(0, minLikes.get(), "Количество лайков уходило в минус");
+            assertEquals(0, filmLeaderboard.getLikesCount(filmId), "Лайки фильма посчитаны неверно");
+            assertTrue(filmLeaderboard.isConsistentWithStorage(), "Рейтинг в памяти расходится с базой данных");
+        } finally {
+            // тест идет вне транзакции, чтобы потоки видели пользователей, поэтому данные удаляются вручную
+            jdbcTemplate.update("DELETE FROM movies WHERE id = ?", filmId);
+            jdbcTemplate.update("DELETE FROM users WHERE login = 'toggle_user'");
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testLeaderboardShouldStayConsistentWhenRebuiltWhileLikesChange() throws InterruptedException {
+        // given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            userIds.add(addUser("rebuild_user" + i));
+        }
+        Integer filmId1 = filmService.add(makeFilm()).getId();
+        Integer filmId2 = filmService.add(makeFilm()).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // do
+        executor.execute(() -> {
+            for (int i = 0; i < 3; i++) {
+                for (Integer userId : userIds) {
+                    filmService.addLike(filmId1, userId);
+                    filmService.addLike(filmId2, userId);
+                    filmService.removeLike(filmId1, userId);
+                }
+            }
+        });
+        executor.execute(() -> {
+            for (int i = 0; i < 20; i++) {
+                filmLeaderboard.rebuild();
+            }
+        });
+        executor.shutdown();
+        try {
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Потоки не завершились");
+            // expect
+            assertEquals(0, filmLeaderboard.getLikesCount(filmId1), "Лайки первого фильма посчитаны неверно");
+            assertEquals(userIds.size(), filmLeaderboard.getLikesCount(filmId2),
+                    "Лайки второго фильма посчитаны неверно");
+            assertTrue(filmLeaderboard.isConsistentWithStorage(), "Рейтинг в памяти расходится с базой данных");
+        } finally {
+            // тест идет вне транзакции, чтобы потоки видели пользователей, поэтому данные удаляются вручную
+            jdbcTemplate.update("DELETE FROM movies WHERE id IN (?, ?)", filmId1, filmId2);
+            jdbcTemplate.update("DELETE FROM users WHERE login LIKE 'rebuild_user%'");
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testRecommenderShouldStayConsistentWhenUsersLikeDifferentFilmsConcurrently()
+            throws InterruptedException {
+        // given
+        int threads = 4;
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            userIds.add(addUser("colike_user" + i));
+        }
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            filmIds.add(filmService.add(makeFilm()).getId());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // do
+        for (Integer filmId : filmIds) {
+            executor.execute(() -> {
+                for (Integer userId : userIds) {
+                    filmService.addLike(filmId, userId);
+                }
+                for (int i = 0; i < userIds.size(); i += 2) {
+                    filmService.removeLike(filmId, userIds.get(i));
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Потоки не завершились");
+            // expect
+            assertTrue(filmRecommender.isConsistentWithStorage(), "Совместные лайки расходятся с базой данных");
+        } finally {
+            // тест идет вне транзакции, чтобы потоки видели пользователей, поэтому данные удаляются вручную
+            for (Integer filmId : filmIds) {
+                jdbcTemplate.update("DELETE FROM movies WHERE id = ?", filmId);
+            }
+            jdbcTemplate.update("DELETE FROM users WHERE login LIKE 'colike_user%'");
+        }
+    }
+
+    @Test
+    public void testGetFilmsPageShouldWalkWholeCatalogByCursor() {
+        // given
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            filmIds.add(filmService.add(makeFilm()).getId());
+        }
+        List<Integer> pagedFilmIds = new ArrayList<>();
+        // do
+        Page<Film> page = filmService.getFilmsPage(2, null);
+        pagedFilmIds.addAll(page.getItems().stream().map(Film::getId).collect(Collectors.toList()));
+        while (page.getNextCursor() != null) {
+            page = filmService.getFilmsPage(2, page.getNextCursor());
+            pagedFilmIds.addAll(page.getItems().stream().map(Film::getId).collect(Collectors.toList()));
+        }
+        // expect
+        assertEquals(filmIds, pagedFilmIds, "Постраничный обход не совпадает со списком фильмов");
+        assertThrows(ValidationException.class, () -> filmService.getFilmsPage(2, "not-a-cursor"),
+                "Неверный курсор должен приводить к ошибке валидации");
+        assertThrows(IncorrectParameterException.class, () -> filmService.getFilmsPage(0, null),
+                "Нулевой размер страницы должен приводить к ошибке");
+    }
+
+    @Test
+    public void testGetRecommendedFilmsShouldSuggestUnseenCoLikedFilmsWhenLikesChange() {
+        // given
+        Integer userId = addUser("recommend_user");
+        Integer similarUser1 = addUser("recommend_similar1");
+        Integer similarUser2 = addUser("recommend_similar2");
+        Integer seenFilm = filmService.add(makeFilm()).getId();
+        Integer coLikedTwice = filmService.add(makeFilm()).getId();
+        Integer coLikedOnce = filmService.add(makeFilm()).getId();
+        Integer unrelatedFilm = filmService.add(makeFilm()).getId();
+        // do
+        filmService.addLike(seenFilm, userId);
+        filmService.addLike(seenFilm, similarUser1);
+        filmService.addLike(seenFilm, similarUser2);
+        filmService.addLike(coLikedTwice, similarUser1);
+        filmService.addLike(coLikedTwice, similarUser2);
+        filmService.addLike(coLikedOnce, similarUser1);
+        filmService.addLike(unrelatedFilm, addUser("recommend_other"));
+        List<Integer> recommendedFilmIds = filmService.getRecommendedFilms(userId, 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        filmService.addLike(coLikedTwice, userId);
+        filmService.removeLike(coLikedOnce, similarUser1);
+        List<Integer> recommendedAfterChanges = filmService.getRecommendedFilms(userId, 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        // expect
+        assertEquals(List.of(coLikedTwice, coLikedOnce), recommendedFilmIds,
+                "Рекомендации должны идти по сходству без уже лайкнутых и несвязанных фильмов");
+        assertTrue(recommendedAfterChanges.isEmpty(), "Лайкнутый фильм и фильм без совместных лайков рекомендованы");
+        assertTrue(filmRecommender.isConsistentWithStorage(), "Совместные лайки в памяти расходятся с базой данных");
+        assertThrows(UserNotFoundException.class, () -> filmService.getRecommendedFilms(-1, 10),
+                "Рекомендации для несуществующего пользователя должны приводить к ошибке");
+    }
+
+    @Test
+    public void testGetSimilarFilmsShouldRankFilmsBySharedAudienceWhenLikesChange() {
+        // given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            userIds.add(addUser("similar_user" + i));
+        }
+        Integer filmId = filmService.add(makeFilm()).getId();
+        Integer sameAudienceFilm = filmService.add(makeFilm()).getId();
+        Integer otherAudienceFilm = filmService.add(makeFilm()).getId();
+        // do
+        for (int i = 0; i < 3; i++) {
+            filmService.addLike(filmId, userIds.get(i));
+            filmService.addLike(sameAudienceFilm, userIds.get(i));
+            filmService.addLike(otherAudienceFilm, userIds.get(i + 3));
+        }
+        List<Integer> similarFilmIds = filmService.getSimilarFilms(filmId, 10).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        double sameAudienceSimilarity = filmSimilarityIndex.getEstimatedSimilarity(filmId, sameAudienceFilm);
+        double otherAudienceSimilarity = filmSimilarityIndex.getEstimatedSimilarity(filmId, otherAudienceFilm);
+        for (int i = 0; i < 3; i++) {
+            filmService.removeLike(sameAudienceFilm, userIds.get(i));
+            filmService.addLike(sameAudienceFilm, userIds.get(i + 3));
+        }
+        // expect
+        assertEquals(sameAudienceFilm, similarFilmIds.get(0), "Фильм с той же аудиторией должен быть первым");
+        assertEquals(1.0, sameAudienceSimilarity, "Фильмы с одинаковыми признаками должны совпасть полностью");
+        assertTrue(otherAudienceSimilarity < sameAudienceSimilarity, "Сходство с другой аудиторией завышено");
+        assertEquals(1.0, filmSimilarityIndex.getEstimatedSimilarity(sameAudienceFilm, otherAudienceFilm),
+                "Подпись не обновилась после смены аудитории фильма");
+        assertThrows(FilmNotFoundException.class, () -> filmService.getSimilarFilms(-1, 10),
+                "Похожие фильмы для несуществующего фильма должны приводить к ошибке");
+    }
+
+    @Test
+    public void testGetSimilarFilmsShouldIgnoreLikesFromRequestWhenFilmsAdded() {
+        // given
+        Film film = makeFilm();
+        film.setUsersLikes(new HashSet<>(List.of(1001, 1002, 1003)));
+        Film otherFilm = makeFilm();
+        otherFilm.setUsersLikes(new HashSet<>(List.of(1001, 1002, 1003)));
+        // do
+        Film addedFilm = filmService.add(film);
+        Integer otherFilmId = filmService.addFilms(List.of(otherFilm)).get(0);
+        // expect
+        assertTrue(addedFilm.getUsersLikes().isEmpty(), "Несохраненные лайки вернулись в ответе");
+        assertTrue(filmService.getSimilarFilms(addedFilm.getId(), 10).isEmpty(),
+                "Похожие фильмы найдены по несохраненным лайкам");
+        assertEquals(0.0, filmSimilarityIndex.getEstimatedSimilarity(addedFilm.getId(), otherFilmId),
+                "Несохраненные лайки попали в подписи фильмов");
+    }
+
+    @Test
+    public void testSimilarityIndexShouldMatchRebuiltIndexWhenLikesAndGenresChange() {
+        // given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            userIds.add(addUser("sketch_user" + i));
+        }
+        Film film = makeFilm();
+        film.setGenres(new HashSet<>(List.of(new FilmGenre(1))));
+        Integer filmId = filmService.add(film).getId();
+        Integer sameAudienceFilm = filmService.add(makeFilm()).getId();
+        Integer otherAudienceFilm = filmService.add(makeFilm()).getId();
+        for (int i = 0; i < 4; i++) {
+            filmService.addLike(filmId, userIds.get(i));
+            filmService.addLike(sameAudienceFilm, userIds.get(i));
+            filmService.addLike(otherAudienceFilm, userIds.get(i + 2));
+        }
+        // do
+        filmService.removeLike(filmId, userIds.get(0));
+        filmService.removeLike(filmId, userIds.get(1));
+        film.setId(filmId);
+        film.setGenres(new HashSet<>(List.of(new FilmGenre(2))));
+        filmService.updateFilm(film);
+        double[] similarities = {
+                filmSimilarityIndex.getEstimatedSimilarity(filmId, sameAudienceFilm),
+                filmSimilarityIndex.getEstimatedSimilarity(filmId, otherAudienceFilm),
+                filmSimilarityIndex.getEstimatedSimilarity(sameAudienceFilm, otherAudienceFilm)
+        };
+        filmSimilarityIndex.rebuild();
+        // expect
+        assertArrayEquals(new double[]{
+                filmSimilarityIndex.getEstimatedSimilarity(filmId, sameAudienceFilm),
+                filmSimilarityIndex.getEstimatedSimilarity(filmId, otherAudienceFilm),
+                filmSimilarityIndex.getEstimatedSimilarity(sameAudienceFilm, otherAudienceFilm)
+        }, similarities, "Подписи после изменений расходятся с подписями, построенными заново");
+    }
+
+    @Test
+    public void testAddLikesShouldIndexCommittedChunksWhenLaterChunkFails() {
+        // given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            userIds.add(addUser("bulk_user" + i));
+        }
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            filmIds.add(filmService.add(makeFilm()).getId());
+        }
+        List<FilmLike> likes = new ArrayList<>();
+        for (Integer userId : userIds) {
+            for (Integer filmId : filmIds) {
+                likes.add(new FilmLike(filmId, userId));
+            }
+        }
+        likes.add(new FilmLike(-1, userIds.get(0)));
+        // do
+        assertThrows(FilmNotFoundException.class, () -> filmService.addLikes(likes),
+                "Лайк несуществующему фильму должен приводить к ошибке");
+        // expect
+        assertEquals(userIds.size(), filmLeaderboard.getLikesCount(filmIds.get(0)),
+                "Лайки из записанной части не попали в рейтинг");
+        assertTrue(filmLeaderboard.isConsistentWithStorage(), "Рейтинг в памяти расходится с базой данных");
+        assertTrue(filmRecommender.isConsistentWithStorage(), "Совместные лайки расходятся с базой данных");
+    }
+}
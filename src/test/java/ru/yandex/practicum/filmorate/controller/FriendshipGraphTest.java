@@ -0,0 +1,273 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendshipGraph;
+import ru.yandex.practicum.filmorate.service.FriendshipLocks;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipConsumer;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FriendshipGraphTest {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private UserDbStorage userStorage;
+    private FriendshipGraph friendshipGraph;
+    private UserService userService;
+
+    @BeforeEach
+    public void newService() {
+        FriendshipLocks friendshipLocks = new FriendshipLocks();
+        userStorage = new UserDbStorage(jdbcTemplate, transactionManager);
+        friendshipGraph = new FriendshipGraph(userStorage, friendshipLocks);
+        friendshipGraph.rebuild();
+        userService = new UserService(userStorage, friendshipGraph, friendshipLocks);
+    }
+
+    private Integer addUser(final String login) {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) VALUES (?, ?, ?)",
+                login + "@mail.test", login, LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE login = ?", Integer.class, login);
+    }
+
+    private List<Integer> ids(final List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void testFriendshipGraphShouldFollowStorageWhenFriendsAddedAndRemoved() {
+        // given
+        Integer userId = addUser("graph_user");
+        Integer friendId = addUser("graph_friend");
+        Integer otherId = addUser("graph_other");
+        // do
+        userService.addToFriends(userId, friendId);
+        userService.addToFriends(otherId, friendId);
+        userService.addToFriends(friendId, userId);
+        // expect
+        assertEquals(FriendshipGraph.Status.CONFIRMED, friendshipGraph.getStatus(userId, friendId),
+                "Статус дружбы пользователя не совпадает");
+        assertEquals(FriendshipGraph.Status.CONFIRMED, friendshipGraph.getStatus(friendId, userId),
+                "Принятая заявка должна стать дружбой");
+        assertEquals(FriendshipGraph.Status.REQUESTED, friendshipGraph.getStatus(friendId, otherId),
+                "Заявка в друзья не найдена");
+        assertArrayEquals(new int[]{otherId}, friendshipGraph.getFriendRequestIds(friendId),
+                "Заявки в друзья не совпадают");
+        assertArrayEquals(new int[]{userId}, friendshipGraph.getFriendIds(friendId), "Друзья не совпадают");
+        assertEquals(List.of(friendId), ids(userService.getCommonFriends(userId, otherId)),
+                "Общие друзья не совпадают");
+        assertTrue(friendshipGraph.isConsistentWithStorage(), "Граф дружбы расходится с базой данных");
+
+        // do
+        userService.removeFromFriends(userId, friendId);
+        // expect
+        assertTrue(userService.getUserFriends(userId).isEmpty(), "Друг не удален");
+        assertEquals(FriendshipGraph.Status.NONE, friendshipGraph.getStatus(userId, friendId),
+                "Связь должна быть удалена");
+        assertEquals(List.of(userId), ids(userService.getUserFriends(friendId)),
+                "Обратная связь не должна удаляться");
+        assertTrue(friendshipGraph.isConsistentWithStorage(), "Граф дружбы расходится с базой данных");
+    }
+
+    @Test
+    public void testFriendshipGraphShouldKeepEdgesWhenCompactedAfterManyChanges() {
+        // given
+        int users = 5000;
+        // do
+        for (int userId = 1; userId <= users; userId++) {
+            friendshipGraph.addFriendship(userId, userId + 1, true);
+            friendshipGraph.addFriendship(userId, userId + 2, false);
+        }
+        friendshipGraph.removeFriendship(7, 8);
+        // expect
+        for (int userId = 1; userId <= users; userId++) {
+            if (userId != 7) {
+                assertArrayEquals(new int[]{userId + 1}, friendshipGraph.getFriendIds(userId),
+                        "Друзья пользователя " + userId + " не совпадают");
+            }
+            assertArrayEquals(new int[]{userId + 2}, friendshipGraph.getFriendRequestIds(userId),
+                    "Заявки пользователя " + userId + " не совпадают");
+        }
+        assertEquals(0, friendshipGraph.getFriendIds(7).length, "Удаленная связь осталась после уплотнения");
+    }
+
+    @Test
+    public void testFriendshipGraphShouldKeepEveryEdgeWhenChangedConcurrently() throws InterruptedException {
+        // given
+        int threads = 8;
+        int friendsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // do
+        for (int i = 0; i < threads; i++) {
+            int threadNumber = i;
+            executor.execute(() -> {
+                for (int friendId = 1; friendId <= friendsPerThread; friendId++) {
+                    friendshipGraph.addFriendship(1, threadNumber * friendsPerThread + friendId, true);
+                    friendshipGraph.addFriendship(2 + threadNumber, friendId, true);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Потоки не завершились");
+        // expect
+        assertEquals(threads * friendsPerThread, friendshipGraph.getFriendIds(1).length,
+                "Потеряны связи пользователя 1");
+        for (int i = 0; i < threads; i++) {
+            assertEquals(friendsPerThread, friendshipGraph.getCommonFriendIds(2, 2 + i).length,
+                    "Общие друзья пользователей не совпадают");
+        }
+    }
+
+    @Test
+    public void testSuggestedFriendsShouldBeRankedByMutualFriendsWhenFriendsOfFriendsExist() {
+        // given
+        Integer userId = addUser("suggest_user");
+        Integer friend1 = addUser("suggest_friend1");
+        Integer friend2 = addUser("suggest_friend2");
+        Integer twoMutual = addUser("suggest_two");
+        Integer oneMutual = addUser("suggest_one");
+        Integer requested = addUser("suggest_requested");
+        userService.addToFriends(userId, friend1);
+        userService.addToFriends(userId, friend2);
+        userService.addToFriends(userId, requested);
+        userService.addToFriends(friend1, oneMutual);
+        userService.addToFriends(friend1, twoMutual);
+        userService.addToFriends(friend2, twoMutual);
+        userService.addToFriends(friend2, requested);
+        userService.addToFriends(friend1, userId);
+        // do
+        List<User> suggestions = userService.getFriendSuggestions(userId, 10);
+        List<User> topSuggestion = userService.getFriendSuggestions(userId, 1);
+        // expect
+        assertEquals(List.of(twoMutual, oneMutual), ids(suggestions),
+                "Рекомендации должны идти по убыванию общих друзей без самого пользователя и его друзей");
+        assertEquals(List.of(twoMutual), ids(topSuggestion), "Лучшая рекомендация не совпадает");
+    }
+
+    @Test
+    public void testSuggestedFriendsShouldBeLimitedWhenFriendsAreSuperConnected() {
+        // given
+        int hubs = 600;
+        int hubFriends = 600;
+        for (int hubId = 2; hubId < 2 + hubs; hubId++) {
+            friendshipGraph.addFriendship(1, hubId, true);
+            for (int friendId = 10_000; friendId < 10_000 + hubFriends; friendId++) {
+                friendshipGraph.addFriendship(hubId, friendId, true);
+            }
+        }
+        // do
+        int[] suggestions = friendshipGraph.getSuggestedFriendIds(1, 5);
+        // expect
+        assertEquals(5, suggestions.length, "Количество рекомендаций не совпадает");
+        for (int i = 1; i < suggestions.length; i++) {
+            assertTrue(suggestions[i - 1] < suggestions[i], "При равном числе общих друзей порядок должен быть по ID");
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testFriendshipGraphShouldFollowStorageWhenPairBefriendsEachOtherConcurrently()
+            throws InterruptedException {
+        // given
+        int pairs = 50;
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 2 * pairs; i++) {
+            userIds.add(addUser("pair_user" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // do
+        executor.execute(() -> {
+            for (int i = 0; i < pairs; i++) {
+                userService.addToFriends(userIds.get(2 * i), userIds.get(2 * i + 1));
+            }
+        });
+        executor.execute(() -> {
+            for (int i = 0; i < pairs; i++) {
+                userService.addToFriends(userIds.get(2 * i + 1), userIds.get(2 * i));
+            }
+        });
+        executor.shutdown();
+        try {
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Потоки не завершились");
+            // expect
+            for (int i = 0; i < pairs; i++) {
+                assertEquals(FriendshipGraph.Status.CONFIRMED,
+                        friendshipGraph.getStatus(userIds.get(2 * i), userIds.get(2 * i + 1)),
+                        "Встречные заявки должны стать дружбой");
+                assertEquals(FriendshipGraph.Status.CONFIRMED,
+                        friendshipGraph.getStatus(userIds.get(2 * i + 1), userIds.get(2 * i)),
+                        "Встречные заявки должны стать дружбой");
+            }
+            assertTrue(friendshipGraph.isConsistentWithStorage(), "Граф дружбы расходится с базой данных");
+        } finally {
+            // тест идет вне транзакции, чтобы потоки видели пользователей, поэтому данные удаляются вручную
+            jdbcTemplate.update("DELETE FROM users WHERE login LIKE 'pair_user%'");
+        }
+    }
+
+    @Test
+    public void testFriendshipGraphShouldFitMillionsOfEdgesWhenBuiltAndChanged() {
+        // given
+        int users = 2_000_000;
+        int friendsPerUser = 5;
+        int hubFriends = 100_000;
+        UserDbStorage generatedStorage = new UserDbStorage(jdbcTemplate, transactionManager) {
+            @Override
+            public void exportFriendships(final FriendshipConsumer friendshipConsumer) {
+                for (int userId = 1; userId <= users; userId++) {
+                    for (int i = 1; i <= friendsPerUser; i++) {
+                        friendshipConsumer.accept(userId, userId + i, i % 2 == 1);
+                    }
+                }
+            }
+        };
+        FriendshipGraph graph = new FriendshipGraph(generatedStorage, new FriendshipLocks());
+        long usedBefore = usedMemory();
+        // do
+        graph.rebuild();
+        for (int i = 0; i < hubFriends; i++) {
+            graph.addFriendship(0, (int) ((long) i * 7919 % hubFriends) + 1, true);
+        }
+        long usedAfter = usedMemory();
+        // expect
+        assertEquals(3, graph.getFriendIds(users).length, "Количество друзей не совпадает");
+        assertEquals(FriendshipGraph.Status.REQUESTED, graph.getStatus(users, users + 2), "Заявка в друзья не найдена");
+        int[] hubFriendIds = graph.getFriendIds(0);
+        assertEquals(hubFriends, hubFriendIds.length, "Потеряны связи пользователя с большим числом друзей");
+        for (int i = 1; i < hubFriendIds.length; i++) {
+            assertTrue(hubFriendIds[i - 1] < hubFriendIds[i], "Друзья должны идти по возрастанию ID");
+        }
+        long usedMegabytes = (usedAfter - usedBefore) >> 20;
+        assertTrue(usedMegabytes < 150, "Граф из " + users * friendsPerUser + " связей занимает "
+                + usedMegabytes + " МБ");
+    }
+}
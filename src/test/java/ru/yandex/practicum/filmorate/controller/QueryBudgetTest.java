@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.QueryBudget;
+import ru.yandex.practicum.filmorate.storage.QueryCounting;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:query-budget;mode=MySQL")
+@AutoConfigureMockMvc
+@QueryCounting
+class QueryBudgetTest {
+
+    private static final AtomicInteger LOGIN_SEQUENCE = new AtomicInteger();
+    private static final int FILMS_COUNT = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    private Integer userId;
+    private Integer otherUserId;
+    private Integer filmId;
+
+    @BeforeEach
+    public void addFilmsWithLikesAndFriends() {
+        userId = addUser();
+        otherUserId = addUser();
+        for (int i = 0; i < 5; i++) {
+            Integer friendId = addUser();
+            userService.addToFriends(userId, friendId);
+            userService.addToFriends(otherUserId, friendId);
+        }
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            filmId = filmService.add(new Film(null, "Film " + i, "About film " + i,
+                    LocalDate.parse("2000-01-01"), 90, new FilmRating(1), new HashSet<>(), new HashSet<>())).getId();
+            filmService.addLike(filmId, userId);
+            filmService.addLike(filmId, otherUserId);
+        }
+    }
+
+    private Integer addUser() {
+        String login = "budget" + LOGIN_SEQUENCE.incrementAndGet();
+        return userService.addUser(new User(null, login + "@mail.test", login, login,
+                LocalDate.parse("1990-01-01"), new HashSet<>(), new HashSet<>())).getId();
+    }
+
+    @Test
+    @QueryBudget(3)
+    void testGetPopularFilms_ShouldExecuteAtMost3Queries() throws Exception {
+        mockMvc.perform(get("/films/popular").param("count", String.valueOf(FILMS_COUNT)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(FILMS_COUNT));
+    }
+
+    @Test
+    @QueryBudget(3)
+    void testGetFilmById_ShouldExecuteAtMost3Queries() throws Exception {
+        mockMvc.perform(get("/films/{id}", filmId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.usersLikes.length()").value(2));
+    }
+
+    @Test
+    @QueryBudget(3)
+    void testGetFilmsPage_ShouldExecuteAtMost3Queries() throws Exception {
+        mockMvc.perform(get("/films").param("limit", String.valueOf(FILMS_COUNT)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(FILMS_COUNT));
+    }
+
+    @Test
+    @QueryBudget(3)
+    void testGetUserFriends_ShouldExecuteAtMost3Queries() throws Exception {
+        mockMvc.perform(get("/users/{id}/friends", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5));
+    }
+
+    @Test
+    @QueryBudget(4)
+    void testGetCommonFriends_ShouldExecuteAtMost4Queries() throws Exception {
+        mockMvc.perform(get("/users/{id}/friends/common/{otherId}", userId, otherUserId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5));
+    }
+}
@@ -3,8 +3,11 @@ package ru.yandex.practicum.filmorate.controller;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FriendshipGraph;
+import ru.yandex.practicum.filmorate.service.FriendshipLocks;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
@@ -19,7 +22,9 @@ class UserServiceTest {
 
     @BeforeEach
     public void newController() {
-        userService = new UserService(new UserDbStorage(new JdbcTemplate()));
+        UserDbStorage userStorage = new UserDbStorage(new JdbcTemplate(), new DataSourceTransactionManager());
+        FriendshipLocks friendshipLocks = new FriendshipLocks();
+        userService = new UserService(userStorage, new FriendshipGraph(userStorage, friendshipLocks), friendshipLocks);
     }
 
     @Test
@@ -0,0 +1,158 @@
+package ru.yandex.practicum.filmorate.dataset;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Генератор сдвигает счетчики ID командой ALTER TABLE, а она фиксирует транзакцию, поэтому тест работает
+ * без транзакции теста в своей базе данных и очищает ее после каждого метода.
+ */
+@JdbcTest(properties = "spring.datasource.url=jdbc:h2:mem:dataset-generator;mode=MySQL")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class DatasetGeneratorTest {
+
+    private static final int USERS = 500;
+    private static final int FILMS = 300;
+    private static final int LIKES = 5_000;
+    private static final int FRIENDSHIPS = 2_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    private void clearDatabase() {
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("DELETE FROM movies");
+    }
+
+    private void generate(final long seed) {
+        new DatasetGenerator(jdbcTemplate, transactionManager, seed, 1.0).generate(USERS, FILMS, LIKES, FRIENDSHIPS);
+    }
+
+    private int count(final String sql) {
+        return jdbcTemplate.queryForObject(sql, Integer.class);
+    }
+
+    private List<String> selectLikesAndFriends() {
+        List<String> rows = jdbcTemplate.queryForList("SELECT CONCAT(movie_id, ':', user_id) FROM movie_like "
+                + "ORDER BY movie_id, user_id", String.class);
+        rows.addAll(jdbcTemplate.queryForList("SELECT CONCAT(user_id, '-', friend_id) FROM friends "
+                + "ORDER BY user_id, friend_id", String.class));
+        return rows;
+    }
+
+    private List<String> selectKeysAndIndexes() {
+        List<String> keys = jdbcTemplate.queryForList("SELECT CONCAT(table_name, ' ', constraint_name, ' ', "
+                + "constraint_type) FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS WHERE table_schema = SCHEMA() "
+                + "ORDER BY 1", String.class);
+        keys.addAll(jdbcTemplate.queryForList("SELECT CONCAT(table_name, ' ', COUNT(*)) "
+                + "FROM INFORMATION_SCHEMA.INDEXES WHERE table_schema = SCHEMA() GROUP BY table_name ORDER BY 1",
+                String.class));
+        keys.addAll(jdbcTemplate.queryForList("SELECT CONCAT(table_name, ' ', index_name) "
+                + "FROM INFORMATION_SCHEMA.INDEXES WHERE table_schema = SCHEMA() AND NOT is_generated ORDER BY 1",
+                String.class));
+        return keys;
+    }
+
+    @Test
+    void testGenerate_ShouldInsertRequestedRowCounts_WhenDatabaseIsEmpty() {
+        //do
+        generate(1);
+        //expect
+        assertEquals(USERS, count("SELECT COUNT(*) FROM users"), "Количество пользователей не совпадает");
+        assertEquals(FILMS, count("SELECT COUNT(*) FROM movies"), "Количество фильмов не совпадает");
+        assertEquals(LIKES, count("SELECT COUNT(*) FROM movie_like"), "Количество лайков не совпадает");
+        assertEquals(2 * FRIENDSHIPS, count("SELECT COUNT(*) FROM friends"), "Количество строк дружбы не совпадает");
+        assertEquals(0, count("SELECT COUNT(*) FROM friends f WHERE NOT EXISTS (SELECT 1 FROM friends r "
+                + "WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id)"), "Дружба должна быть взаимной");
+        assertTrue(count("SELECT COUNT(*) FROM movie_genre") > 0, "У фильмов должны быть жанры");
+    }
+
+    @Test
+    void testGenerate_ShouldProduceSameRows_WhenSeedIsSame() {
+        //given
+        generate(1);
+        List<String> firstRows = selectLikesAndFriends();
+        clearDatabase();
+        //do
+        generate(1);
+        List<String> secondRows = selectLikesAndFriends();
+        clearDatabase();
+        generate(2);
+        List<String> otherSeedRows = selectLikesAndFriends();
+        //expect
+        assertEquals(firstRows, secondRows, "При одинаковом зерне данные должны совпадать");
+        assertNotEquals(firstRows, otherSeedRows, "При разном зерне данные должны отличаться");
+    }
+
+    @Test
+    void testGenerate_ShouldSkewLikesToFewFilms_WhenZipfExponentIsOne() {
+        //do
+        generate(1);
+        Integer topFilmsLikes = jdbcTemplate.queryForObject("SELECT SUM(likes) FROM (SELECT COUNT(*) AS likes "
+                + "FROM movie_like GROUP BY movie_id ORDER BY likes DESC LIMIT ?)", Integer.class, FILMS / 10);
+        //expect
+        assertTrue(topFilmsLikes > LIKES / 2,
+                "10% самых популярных фильмов должны собрать больше половины лайков, собрали: " + topFilmsLikes);
+    }
+
+    @Test
+    void testGenerate_ShouldContinueIds_WhenNewUserIsAddedAfterGeneration() {
+        //given
+        generate(1);
+        User user = User.builder()
+                .name("Test name")
+                .login("Test login")
+                .email("foo@bar.com")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friends(Collections.emptySet())
+                .friendsRequests(Collections.emptySet())
+                .build();
+        //do
+        Integer userId = new UserDbStorage(jdbcTemplate, transactionManager).addUser(user).getId();
+        //expect
+        assertEquals(USERS + 1, userId, "ID нового пользователя должен идти за сгенерированными");
+    }
+
+    @Test
+    void testGenerate_ShouldRestoreForeignKeysAndIndexes_WhenDataIsLoaded() {
+        //given
+        List<String> keysBeforeGeneration = selectKeysAndIndexes();
+        //do
+        generate(1);
+        //expect
+        assertEquals(keysBeforeGeneration, selectKeysAndIndexes(),
+                "После загрузки должны быть те же внешние ключи и индексы, что и до нее");
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO movie_like (movie_id, user_id) VALUES (?, ?)", -1, 1),
+                "После загрузки проверка ссылочной целостности должна быть включена");
+    }
+
+    @Test
+    void testGenerate_ShouldThrowIllegalStateException_WhenDatabaseIsNotEmpty() {
+        //given
+        generate(1);
+        //expect
+        assertThrows(IllegalStateException.class, () -> generate(1),
+                "Генерация в непустую базу данных должна завершаться ошибкой");
+    }
+}
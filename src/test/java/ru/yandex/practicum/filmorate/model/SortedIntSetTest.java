@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedIntSetTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void testAddInt_ShouldKeepValuesSortedAndUnique_WhenValuesAddedInAnyOrder() {
+        //given
+        SortedIntSet set = new SortedIntSet();
+        //do
+        List<Boolean> added = List.of(set.addInt(5), set.addInt(1), set.addInt(9), set.addInt(5), set.addInt(3));
+        //expect
+        assertEquals(List.of(true, true, true, false, true), added, "Результаты добавления не совпадают");
+        assertArrayEquals(new int[]{1, 3, 5, 9}, set.toIntArray(), "Элементы множества не совпадают");
+        assertEquals(Set.of(1, 3, 5, 9), set, "Множество не равно HashSet с теми же элементами");
+        assertEquals(Set.of(1, 3, 5, 9).hashCode(), set.hashCode(), "hashCode не совпадает с HashSet");
+    }
+
+    @Test
+    void testRemove_ShouldRemoveValues_WhenRemovedDirectlyAndThroughIterator() {
+        //given
+        SortedIntSet set = SortedIntSet.of(1, 2, 3, 4, 5);
+        //do
+        boolean isRemoved = set.remove(3);
+        boolean isMissingRemoved = set.remove(7);
+        Iterator<Integer> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        //expect
+        assertTrue(isRemoved, "Существующий элемент не удален");
+        assertFalse(isMissingRemoved, "Удален отсутствующий элемент");
+        assertArrayEquals(new int[]{1, 5}, set.toIntArray(), "Элементы после удаления не совпадают");
+        assertFalse(set.contains("1"), "Множество не должно содержать элементы другого типа");
+    }
+
+    @Test
+    void testJson_ShouldWriteSameArrayAsHashSetAndReadSortedIntSet_WhenUserSerialized() throws Exception {
+        //given
+        User user = User.builder()
+                .id(1)
+                .email("java@mail.test")
+                .login("java")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friendsRequests(new HashSet<>(List.of(3, 1, 2)))
+                .friends(SortedIntSet.of(3, 1, 2))
+                .build();
+        //do
+        String json = objectMapper.writeValueAsString(user);
+        User readUser = objectMapper.readValue(json, User.class);
+        //expect
+        assertTrue(json.contains("\"friendsRequests\":[1,2,3]"), "HashSet должен сериализоваться массивом чисел");
+        assertTrue(json.contains("\"friends\":[1,2,3]"), "SortedIntSet должен сериализоваться тем же массивом");
+        assertEquals(SortedIntSet.class, readUser.getFriends().getClass(), "Тип множества друзей не совпадает");
+        assertEquals(Set.of(1, 2, 3), readUser.getFriends(), "Друзья после чтения Json не совпадают");
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Максимальное количество запросов к базе данных в теле теста. Подготовка данных в @BeforeEach не учитывается.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryBudget {
+
+    int value();
+}
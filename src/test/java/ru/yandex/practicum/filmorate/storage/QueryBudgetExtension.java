@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Проверяет, что тест, отмеченный @QueryBudget, выполнил не больше запросов, чем указано в аннотации.
+ */
+public class QueryBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    @Override
+    public void beforeTestExecution(final ExtensionContext context) {
+        if (findBudget(context).isPresent()) {
+            getDataSource(context).start();
+        }
+    }
+
+    @Override
+    public void afterTestExecution(final ExtensionContext context) {
+        Optional<QueryBudget> budget = findBudget(context);
+        if (budget.isEmpty()) {
+            return;
+        }
+        List<String> queries = getDataSource(context).stop();
+        if (context.getExecutionException().isEmpty()) {
+            QueryCountingDataSource.assertWithinBudget(budget.get().value(), queries);
+        }
+    }
+
+    private Optional<QueryBudget> findBudget(final ExtensionContext context) {
+        return context.getTestMethod().map(method -> method.getAnnotation(QueryBudget.class));
+    }
+
+    private QueryCountingDataSource getDataSource(final ExtensionContext context) {
+        return QueryCountingDataSource.of(SpringExtension.getApplicationContext(context).getBean(DataSource.class));
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Подключает к тестовому контексту подсчет запросов к базе данных и проверку @QueryBudget.
+ * Подсчитывающий источник данных возвращает QueryCountingDataSource.of(dataSource).
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Import(QueryCountingPostProcessor.class)
+@ExtendWith(QueryBudgetExtension.class)
+public @interface QueryCounting {
+}
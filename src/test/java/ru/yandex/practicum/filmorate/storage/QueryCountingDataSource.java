@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Источник данных для тестов, который запоминает SQL всех запросов, выполненных потоком между start() и stop().
+ * Запросом считается каждый вызов execute* у выражения, а не его подготовка: подготовленное выражение,
+ * выполненное несколько раз, дает несколько запросов, невыполненное - ни одного. Пакет executeBatch
+ * считается одним запросом.
+ */
+public class QueryCountingDataSource extends DelegatingDataSource {
+
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+    private volatile Thread recordingThread;
+
+    public QueryCountingDataSource(final DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    public static QueryCountingDataSource of(final DataSource dataSource) {
+        try {
+            return dataSource.unwrap(QueryCountingDataSource.class);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Источник данных не подключен к подсчету запросов, "
+                    + "тест нужно отметить @QueryCounting", e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countQueries(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        return countQueries(super.getConnection(username, password));
+    }
+
+    public void start() {
+        queries.clear();
+        recordingThread = Thread.currentThread();
+    }
+
+    public List<String> stop() {
+        recordingThread = null;
+        synchronized (queries) {
+            return new ArrayList<>(queries);
+        }
+    }
+
+    public <T> T withinBudget(final int maxQueries, final QueryAction<T> action) throws Exception {
+        start();
+        T result;
+        try {
+            result = action.run();
+        } finally {
+            assertWithinBudget(maxQueries, stop());
+        }
+        return result;
+    }
+
+    public static void assertWithinBudget(final int maxQueries, final List<String> queries) {
+        if (queries.size() <= maxQueries) {
+            return;
+        }
+        StringBuilder message = new StringBuilder("Выполнено запросов: " + queries.size()
+                + ", допустимо не больше: " + maxQueries);
+        for (int i = 0; i < queries.size(); i++) {
+            message.append('\n').append(i + 1).append(". ").append(queries.get(i));
+        }
+        fail(message.toString());
+    }
+
+    private void record(final String sql) {
+        if (Thread.currentThread() == recordingThread) {
+            queries.add(sql);
+        }
+    }
+
+    private Connection countQueries(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof Statement) {
+                        String preparedSql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                        return countQueries((Statement) result, method.getReturnType(), preparedSql);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * У подготовленного выражения запоминается его SQL, у обычного - SQL из аргумента execute* или
+     * накопленный addBatch пакет.
+     */
+    private Object countQueries(final Statement statement, final Class<?> statementType, final String preparedSql) {
+        List<String> batch = new ArrayList<>();
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{statementType},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("execute")) {
+                        if (args != null && args[0] instanceof String) {
+                            record((String) args[0]);
+                        } else if (preparedSql != null) {
+                            record(preparedSql);
+                        } else {
+                            record(String.join("; ", batch));
+                            batch.clear();
+                        }
+                    } else if (name.equals("addBatch") && args != null) {
+                        batch.add((String) args[0]);
+                    } else if (name.equals("clearBatch")) {
+                        batch.clear();
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    public interface QueryAction<T> {
+        T run() throws Exception;
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@QueryCounting
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class QueryCountingDataSourceTest {
+
+    private static final String SELECT_GENRE = "SELECT name FROM genre WHERE id = ?";
+    private static final String INSERT_GENRE = "INSERT INTO genre (id, name) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testStop_ShouldCountExecutionsInsteadOfPreparations_WhenStatementReusedOrNotExecuted() {
+        //given
+        QueryCountingDataSource queryCounter = QueryCountingDataSource.of(jdbcTemplate.getDataSource());
+        queryCounter.start();
+        //do
+        jdbcTemplate.execute((Connection connection) -> {
+            connection.prepareStatement(SELECT_GENRE).close();
+            try (PreparedStatement select = connection.prepareStatement(SELECT_GENRE)) {
+                for (int id = 1; id <= 3; id++) {
+                    select.setInt(1, id);
+                    select.executeQuery().close();
+                }
+            }
+            return null;
+        });
+        List<String> queries = queryCounter.stop();
+        //expect
+        assertEquals(List.of(SELECT_GENRE, SELECT_GENRE, SELECT_GENRE), queries,
+                "Каждое выполнение подготовленного выражения должно считаться запросом, а подготовка - нет");
+    }
+
+    @Test
+    void testStop_ShouldCountBatchAsOneQuery_WhenBatchExecuted() {
+        //given
+        QueryCountingDataSource queryCounter = QueryCountingDataSource.of(jdbcTemplate.getDataSource());
+        queryCounter.start();
+        //do
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_GENRE)) {
+                for (int id = 101; id <= 103; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, "Жанр " + id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.addBatch("DELETE FROM genre WHERE id = 101");
+                statement.addBatch("DELETE FROM genre WHERE id = 102");
+                statement.executeBatch();
+                statement.executeUpdate("DELETE FROM genre WHERE id = 103");
+            }
+            return null;
+        });
+        List<String> queries = queryCounter.stop();
+        //expect
+        assertEquals(List.of(INSERT_GENRE, "DELETE FROM genre WHERE id = 101; DELETE FROM genre WHERE id = 102",
+                "DELETE FROM genre WHERE id = 103"), queries, "Пакет должен считаться одним запросом");
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class QueryMetricsTest {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+    private FilmStorage filmStorage;
+
+    @BeforeEach
+    private void makeTimedFilmStorage() {
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        meterRegistry = new SimpleMeterRegistry();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new FilmDbStorage(jdbcTemplate,
+                referenceDataRegistry, transactionManager));
+        proxyFactory.addAspect(new QueryMetrics(meterRegistry));
+        filmStorage = proxyFactory.getProxy();
+    }
+
+    @Test
+    void testTime_ShouldRecordTimerPerOperation_WhenStorageMethodsCalled() {
+        //do
+        filmStorage.getAllFilms();
+        filmStorage.getAllFilms();
+        assertThrows(EmptyResultDataAccessException.class, () -> filmStorage.getFilmById(-1),
+                "Несуществующий фильм не должен находиться");
+        //expect
+        Timer allFilmsTimer = meterRegistry.find(QueryMetrics.TIMER_NAME)
+                .tags("storage", "FilmDbStorage", "operation", "getAllFilms", "exception", "none")
+                .timer();
+        Timer filmByIdTimer = meterRegistry.find(QueryMetrics.TIMER_NAME)
+                .tags("operation", "getFilmById", "exception", "EmptyResultDataAccessException")
+                .timer();
+        assertNotNull(allFilmsTimer, "Таймер операции getAllFilms не зарегистрирован");
+        assertEquals(2, allFilmsTimer.count(), "Количество замеров getAllFilms не совпадает");
+        assertNotNull(filmByIdTimer, "Таймер операции getFilmById с ошибкой не зарегистрирован");
+        assertEquals(1, filmByIdTimer.count(), "Количество замеров getFilmById не совпадает");
+    }
+}
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class CachingFilmStorageTest {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private CachingFilmStorage cachingFilmStorage;
+
+    @BeforeEach
+    private void makeNewFilmStorage() {
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        this.cachingFilmStorage = new CachingFilmStorage(new FilmDbStorage(jdbcTemplate, referenceDataRegistry,
+                transactionManager), 2);
+    }
+
+    private Film makeFilm(final String name) {
+        return Film.builder()
+                .name(name)
+                .description("about coffee")
+                .releaseDate(LocalDate.of(2024, 4, 11))
+                .duration(200)
+                .mpa(new FilmRating(1, "G"))
+                .genres(Collections.emptySet())
+                .usersLikes(Collections.emptySet())
+                .build();
+    }
+
+    private Integer addUser(final String login) {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) VALUES (?, ?, ?)",
+                login + "@mail.test", login, LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE login = ?", Integer.class, login);
+    }
+
+    @Test
+    void testGetFilmById_ShouldReturnCachedFilm_WhenFilmWasReadBefore() {
+        //given
+        Integer filmId = cachingFilmStorage.add(makeFilm("Java")).getId();
+        //do
+        Film firstRead = cachingFilmStorage.getFilmById(filmId);
+        Film secondRead = cachingFilmStorage.getFilmById(filmId);
+        //expect
+        assertSame(firstRead, secondRead, "Повторное чтение фильма должно идти из кэша");
+        assertEquals(1, cachingFilmStorage.getStats().hitCount(), "Количество попаданий в кэш не совпадает");
+        assertEquals(1, cachingFilmStorage.getStats().missCount(), "Количество промахов кэша не совпадает");
+    }
+
+    @Test
+    void testWrites_ShouldInvalidateCachedFilm_WhenFilmOrLikesChanged() {
+        //given
+        Integer userId = addUser("cache_user");
+        Film film = cachingFilmStorage.add(makeFilm("Java"));
+        cachingFilmStorage.getFilmById(film.getId());
+        //do
+        cachingFilmStorage.addUserLikeToFilm(userId, film.getId());
+        Film likedFilm = cachingFilmStorage.getFilmById(film.getId());
+        cachingFilmStorage.removeUserLike(userId, film.getId());
+        Film unlikedFilm = cachingFilmStorage.getFilmById(film.getId());
+        film.setName("Kotlin");
+        cachingFilmStorage.update(film);
+        Film updatedFilm = cachingFilmStorage.getFilmById(film.getId());
+        //expect
+        assertEquals(Set.of(userId), likedFilm.getUsersLikes(), "Лайк не виден после добавления");
+        assertTrue(unlikedFilm.getUsersLikes().isEmpty(), "Лайк виден после удаления");
+        assertEquals("Kotlin", updatedFilm.getName(), "Название фильма не обновилось в кэше");
+        assertEquals(0, cachingFilmStorage.getStats().hitCount(), "После записи фильм не должен читаться из кэша");
+    }
+
+    @Test
+    void testGetFilmsByIds_ShouldKeepOrderAndLoadOnlyMissingFilms_WhenSomeFilmsCached() {
+        //given
+        Integer firstId = cachingFilmStorage.add(makeFilm("First")).getId();
+        Integer secondId = cachingFilmStorage.add(makeFilm("Second")).getId();
+        cachingFilmStorage.getFilmById(secondId);
+        //do
+        List<Film> films = cachingFilmStorage.getFilmsByIds(List.of(secondId, firstId));
+        //expect
+        assertEquals(List.of(secondId, firstId), films.stream().map(Film::getId).collect(Collectors.toList()),
+                "Порядок фильмов не совпадает с порядком ID");
+        assertEquals(1, cachingFilmStorage.getStats().hitCount(), "Количество попаданий в кэш не совпадает");
+        assertEquals(2, cachingFilmStorage.getStats().missCount(), "Количество промахов кэша не совпадает");
+    }
+
+    @Test
+    void testGetFilmsByIds_ShouldNotCacheStaleFilm_WhenFilmInvalidatedDuringLoad() {
+        //given
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        CachingFilmStorage[] storage = new CachingFilmStorage[1];
+        FilmDbStorage filmDbStorage = new FilmDbStorage(jdbcTemplate, referenceDataRegistry, transactionManager) {
+            @Override
+            public List<Film> getFilmsByIds(final List<Integer> filmIds) {
+                List<Film> loadedFilms = super.getFilmsByIds(filmIds);
+                Film changedFilm = super.getFilmById(filmIds.get(0));
+                changedFilm.setName("Kotlin");
+                storage[0].update(changedFilm);
+                return loadedFilms;
+            }
+        };
+        storage[0] = new CachingFilmStorage(filmDbStorage, 2);
+        Integer filmId = storage[0].add(makeFilm("Java")).getId();
+        //do
+        Film loadedFilm = storage[0].getFilmsByIds(List.of(filmId)).get(0);
+        Film readFilm = storage[0].getFilmById(filmId);
+        //expect
+        assertEquals("Java", loadedFilm.getName(), "Пакетное чтение должно вернуть прочитанный фильм");
+        assertEquals("Kotlin", readFilm.getName(), "В кэш попал фильм, прочитанный до сброса");
+    }
+
+    @Test
+    void testGetFilmById_ShouldEvictFilms_WhenCacheIsFull() {
+        //given
+        for (int i = 0; i < 5; i++) {
+            cachingFilmStorage.getFilmById(cachingFilmStorage.add(makeFilm("Film " + i)).getId());
+        }
+        //do
+        cachingFilmStorage.cleanUp();
+        //expect
+        assertTrue(cachingFilmStorage.getSize() <= 2, "Размер кэша превысил ограничение");
+        assertEquals(3, cachingFilmStorage.getStats().evictionCount(), "Количество вытеснений не совпадает");
+    }
+}
@@ -5,28 +5,43 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.LikeException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.storage.QueryCounting;
+import ru.yandex.practicum.filmorate.storage.QueryCountingDataSource;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
 @JdbcTest
+@QueryCounting
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 class FilmDbStorageTest {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private FilmDbStorage filmDbStorage;
+    private ReferenceDataRegistry referenceDataRegistry;
 
     @BeforeEach
     private void makeNewFilmStorage() {
-        this.filmDbStorage = new FilmDbStorage(jdbcTemplate);
+        this.referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        this.referenceDataRegistry.refresh();
+        this.filmDbStorage = new FilmDbStorage(jdbcTemplate, referenceDataRegistry, transactionManager);
     }
 
     private Film makeFilmWithoutId() {
@@ -58,6 +73,12 @@ class FilmDbStorageTest {
                 new FilmGenre(6, "Боевик"));
     }
 
+    private Integer addUser(final String login) {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) VALUES (?, ?, ?)",
+                login + "@mail.test", login, LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE login = ?", Integer.class, login);
+    }
+
     @Test
     void testAdd_ShouldSaveFilmToDb_WhenFilmIsNotNull() {
         //given
@@ -203,4 +224,256 @@ class FilmDbStorageTest {
             assertEquals(rating.getName(), filmRating.getName());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetAllFilms_ShouldUseConstantNumberOfQueries_WhenFilmsHaveGenresAndLikes() {
+        //given
+        Integer userId1 = addUser("user1");
+        Integer userId2 = addUser("user2");
+        for (int i = 0; i < 10; i++) {
+            Film film = makeFilmWithoutId();
+            film.setGenres(Set.of(new FilmGenre(1, "Комедия"), new FilmGenre(2, "Драма")));
+            Integer filmId = filmDbStorage.add(film).getId();
+            filmDbStorage.addUserLikeToFilm(userId1, filmId);
+            filmDbStorage.addUserLikeToFilm(userId2, filmId);
+        }
+
+        QueryCountingDataSource queryCounter = QueryCountingDataSource.of(jdbcTemplate.getDataSource());
+        //do
+        queryCounter.start();
+        List<Film> films = filmDbStorage.getAllFilms();
+        int allFilmsStatements = queryCounter.stop().size();
+        queryCounter.start();
+        Film film = filmDbStorage.getFilmById(films.get(0).getId());
+        int filmByIdStatements = queryCounter.stop().size();
+        queryCounter.start();
+        filmDbStorage.getAllGenres();
+        filmDbStorage.getGenreById(2);
+        filmDbStorage.getAllRatings();
+        filmDbStorage.getRatingById(3);
+        int referenceDataStatements = queryCounter.stop().size();
+        //expect
+        assertEquals(10, films.size(), "Размер списка фильмов не совпадает");
+        assertEquals(3, allFilmsStatements, "Список фильмов должен собираться за 3 запроса");
+        assertEquals(3, filmByIdStatements, "Фильм должен собираться за 3 запроса");
+        assertEquals(0, referenceDataStatements, "Жанры и рейтинги не должны запрашиваться из базы данных");
+        assertEquals(Set.of(userId1, userId2), film.getUsersLikes(), "Лайки фильма не совпадают");
+        assertEquals(List.of(1, 2), film.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toList()),
+                "Жанры фильма не совпадают");
+        assertEquals("G", film.getMpa().getName(), "Рейтинг фильма не совпадает");
+        for (Film savedFilm : films) {
+            assertEquals(2, savedFilm.getUsersLikes().size(), "Количество лайков не совпадает");
+            assertEquals(2, savedFilm.getGenres().size(), "Количество жанров не совпадает");
+        }
+    }
+
+    @Test
+    void testGetPopularFilms_ShouldReturnTopFilmsByLikesWithTiesById_WhenFilmsHaveLikes() {
+        //given
+        Integer userId1 = addUser("user1");
+        Integer userId2 = addUser("user2");
+        Integer filmId1 = filmDbStorage.add(makeFilmWithoutId()).getId();
+        Integer filmId2 = filmDbStorage.add(makeFilmWithoutId()).getId();
+        Integer filmId3 = filmDbStorage.add(makeFilmWithoutId()).getId();
+        Integer filmId4 = filmDbStorage.add(makeFilmWithoutId()).getId();
+        filmDbStorage.addUserLikeToFilm(userId1, filmId3);
+        filmDbStorage.addUserLikeToFilm(userId2, filmId3);
+        filmDbStorage.addUserLikeToFilm(userId1, filmId2);
+        filmDbStorage.addUserLikeToFilm(userId1, filmId4);
+        //do
+        List<Film> popularFilms = filmDbStorage.getPopularFilms(3);
+        //expect
+        assertEquals(List.of(filmId3, filmId2, filmId4),
+                popularFilms.stream().map(Film::getId).collect(Collectors.toList()),
+                "Порядок популярных фильмов не совпадает");
+        assertEquals(Set.of(userId1, userId2), popularFilms.get(0).getUsersLikes(), "Лайки фильма не совпадают");
+        assertEquals(List.of(filmId3, filmId2, filmId4, filmId1),
+                filmDbStorage.getPopularFilms(10).stream().map(Film::getId).collect(Collectors.toList()),
+                "Фильмы без лайков должны попадать в топ");
+    }
+
+    @Test
+    void testGetFilmsPage_ShouldReturnFilmsAfterGivenIdInIdOrder_WhenFilmsExist() {
+        //given
+        List<Integer> filmIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            filmIds.add(filmDbStorage.add(makeFilmWithoutId()).getId());
+        }
+        //do
+        List<Film> firstPage = filmDbStorage.getFilmsPage(0, 2);
+        List<Film> lastPage = filmDbStorage.getFilmsPage(filmIds.get(3), 2);
+        //expect
+        assertEquals(filmIds.subList(0, 2), firstPage.stream().map(Film::getId).collect(Collectors.toList()),
+                "Первая страница фильмов не совпадает");
+        assertEquals(filmIds.subList(4, 5), lastPage.stream().map(Film::getId).collect(Collectors.toList()),
+                "Последняя страница фильмов не совпадает");
+    }
+
+    @Test
+    void testExportFilms_ShouldStreamSameFilmsAsGetAllFilms_WhenFilmsHaveGenresAndLikes() {
+        //given
+        Integer userId1 = addUser("user1");
+        Integer userId2 = addUser("user2");
+        for (int i = 0; i < 5; i++) {
+            Film film = makeFilmWithoutId();
+            film.setGenres(i % 2 == 0 ? Set.of(new FilmGenre(i + 1)) : Collections.emptySet());
+            Integer filmId = filmDbStorage.add(film).getId();
+            if (i % 2 == 1) {
+                filmDbStorage.addUserLikeToFilm(userId1, filmId);
+            }
+            if (i > 2) {
+                filmDbStorage.addUserLikeToFilm(userId2, filmId);
+            }
+        }
+        List<Film> exportedFilms = new ArrayList<>();
+        //do
+        filmDbStorage.exportFilms(exportedFilms::add);
+        //expect
+        assertThat(exportedFilms)
+                .usingRecursiveComparison()
+                .isEqualTo(filmDbStorage.getAllFilms());
+    }
+
+    @Test
+    void testHotQueries_ShouldUseIndexLookups_WhenRelationshipTablesHaveKeys() {
+        //given
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        Map<String, Object> ids = Map.of("ids", List.of(1, 2));
+        List<String> hotQueries = List.of(
+                FilmDbStorage.SELECT_LIKE_EXISTS,
+                FilmDbStorage.INSERT_LIKE,
+                FilmDbStorage.DELETE_LIKE,
+                FilmDbStorage.deleteGenresSql(1, List.of(1, 2)),
+                FilmDbStorage.insertGenresSql(1, List.of(1, 2)),
+                FilmDbStorage.SELECT_LIKE_USER_IDS,
+                FilmAssembler.SELECT_MOVIES + FilmDbStorage.idsCondition(2));
+        List<String> hydrationQueries = List.of(
+                FilmAssembler.SELECT_GENRES_BY_MOVIE_IDS,
+                FilmAssembler.SELECT_LIKES_BY_MOVIE_IDS);
+        //expect
+        for (String sql : hotQueries) {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class,
+                    Collections.nCopies(sql.split("\\?", -1).length - 1, 1).toArray());
+            assertFalse(plan.contains("tableScan"), "Запрос выполняется полным сканированием таблицы: " + plan);
+        }
+        for (String sql : hydrationQueries) {
+            String plan = namedJdbcTemplate.queryForObject("EXPLAIN " + sql, ids, String.class);
+            assertFalse(plan.contains("tableScan"), "Запрос выполняется полным сканированием таблицы: " + plan);
+        }
+    }
+
+    @Test
+    void testAddFilms_ShouldSaveFilmsWithGenresAndReturnIdsInOrder_WhenFilmsSpanSeveralTransactions() {
+        //given
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            Film film = makeFilmWithoutId();
+            film.setName("Film " + i);
+            film.setGenres(Set.of(new FilmGenre(1 + i % 6), new FilmGenre(1 + (i + 1) % 6)));
+            films.add(film);
+        }
+        //do
+        List<Integer> filmIds = filmDbStorage.addFilms(films);
+        //expect
+        assertEquals(2500, filmIds.size(), "Количество ID не совпадает с количеством фильмов");
+        for (int i = 1; i < filmIds.size(); i++) {
+            assertTrue(filmIds.get(i - 1) < filmIds.get(i), "ID должны идти в порядке добавления фильмов");
+        }
+        Film savedFilm = filmDbStorage.getFilmById(filmIds.get(1234));
+        assertEquals("Film 1234", savedFilm.getName(), "ID не соответствует фильму");
+        assertEquals(List.of(5, 6), savedFilm.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toList()),
+                "Жанры фильма не совпадают");
+        assertEquals(5000, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM movie_genre", Integer.class),
+                "Количество жанров не совпадает");
+    }
+
+    @Test
+    void testAddLikes_ShouldSkipExistingAndRepeatedLikes_WhenLikesAddedInBatch() {
+        //given
+        Integer userId1 = addUser("batch_user1");
+        Integer userId2 = addUser("batch_user2");
+        Integer filmId = filmDbStorage.add(makeFilmWithoutId()).getId();
+        filmDbStorage.addUserLikeToFilm(userId1, filmId);
+        List<FilmLike> likes = List.of(new FilmLike(filmId, userId1), new FilmLike(filmId, userId2),
+                new FilmLike(filmId, userId2));
+        //do
+        List<FilmLike> addedLikes = filmDbStorage.addLikes(likes);
+        //expect
+        assertEquals(List.of(new FilmLike(filmId, userId2)), addedLikes, "Добавленные лайки не совпадают");
+        assertEquals(Set.of(userId1, userId2), filmDbStorage.getFilmById(filmId).getUsersLikes(),
+                "Лайки фильма не совпадают");
+        assertThrows(FilmNotFoundException.class, () -> filmDbStorage.addLikes(List.of(new FilmLike(-1, userId1))),
+                "Лайк несуществующего фильма должен приводить к ошибке");
+        assertThrows(UserNotFoundException.class, () -> filmDbStorage.addLikes(List.of(new FilmLike(filmId, -1))),
+                "Лайк несуществующего пользователя должен приводить к ошибке");
+    }
+
+    @Test
+    void testAddLikes_ShouldThrowLikeException_WhenLikeInsertedConcurrently() {
+        //given
+        Integer userId = addUser("concurrent_user");
+        Integer filmId = filmDbStorage.add(makeFilmWithoutId()).getId();
+        JdbcTemplate racingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(final String sql, final List<Object[]> batchArgs) {
+                // другой запрос вставляет тот же лайк между проверкой NOT EXISTS и вставкой
+                throw new DuplicateKeyException("movie_like_pk");
+            }
+        };
+        FilmDbStorage racingStorage = new FilmDbStorage(racingJdbcTemplate, referenceDataRegistry,
+                transactionManager);
+        //expect
+        assertThrows(LikeException.class, () -> racingStorage.addLikes(List.of(new FilmLike(filmId, userId))),
+                "Параллельно вставленный лайк не должен считаться ненайденным фильмом");
+    }
+
+    @Test
+    void testAddUserLikeToFilm_ShouldChangeLikeOnlyOnce_WhenLikeAndUnlikeRepeated() {
+        //given
+        Integer userId = addUser("like_user");
+        Integer filmId = filmDbStorage.add(makeFilmWithoutId()).getId();
+        //expect
+        assertTrue(filmDbStorage.addUserLikeToFilm(userId, filmId), "Новый лайк должен добавляться");
+        assertFalse(filmDbStorage.addUserLikeToFilm(userId, filmId), "Повторный лайк не должен ничего менять");
+        assertTrue(filmDbStorage.isLikeExist(userId, filmId), "Лайк не найден в базе данных");
+        assertTrue(filmDbStorage.removeUserLike(userId, filmId), "Существующий лайк должен удаляться");
+        assertFalse(filmDbStorage.removeUserLike(userId, filmId), "Повторное удаление лайка не должно ничего менять");
+        assertFalse(filmDbStorage.isLikeExist(userId, filmId), "Удаленный лайк найден в базе данных");
+        assertThrows(UserNotFoundException.class, () -> filmDbStorage.addUserLikeToFilm(-1, filmId),
+                "Лайк несуществующего пользователя должен приводить к ошибке");
+        assertThrows(FilmNotFoundException.class, () -> filmDbStorage.addUserLikeToFilm(userId, -1),
+                "Лайк несуществующему фильму должен приводить к ошибке");
+    }
+
+    @Test
+    void testUpdate_ShouldWriteOnlyChangedGenresAndReturnSameFilm_WhenGenresChanged() {
+        //given
+        Film film = makeFilmWithoutId();
+        film.setGenres(Set.of(new FilmGenre(1), new FilmGenre(2), new FilmGenre(3)));
+        Integer filmId = filmDbStorage.add(film).getId();
+        Integer userId = addUser("update_user");
+        filmDbStorage.addUserLikeToFilm(userId, filmId);
+        Film filmForUpdate = makeFilmWithoutId();
+        filmForUpdate.setId(filmId);
+        filmForUpdate.setGenres(Set.of(new FilmGenre(4), new FilmGenre(3), new FilmGenre(2)));
+        filmForUpdate.setUsersLikes(Set.of(-1, -2));
+        QueryCountingDataSource queryCounter = QueryCountingDataSource.of(jdbcTemplate.getDataSource());
+        //do
+        queryCounter.start();
+        Film updatedFilm = filmDbStorage.update(filmForUpdate);
+        int updateStatements = queryCounter.stop().size();
+        //expect
+        assertSame(filmForUpdate, updatedFilm, "Фильм не должен перечитываться после обновления");
+        assertEquals(3, updateStatements, "Фильм, его жанры и лайки должны обновляться за 3 запроса");
+        assertEquals(List.of(2, 3, 4), updatedFilm.getGenres().stream().map(FilmGenre::getId)
+                .collect(Collectors.toList()), "Жанры обновленного фильма не совпадают");
+        assertEquals(List.of(2, 3, 4), jdbcTemplate.queryForList(
+                "SELECT genre_id FROM movie_genre WHERE movie_id = ? ORDER BY genre_id", Integer.class, filmId),
+                "Жанры фильма в базе данных не совпадают");
+        assertEquals(Set.of(userId), updatedFilm.getUsersLikes(),
+                "Обновленный фильм должен возвращаться с сохраненными лайками, а не присланными");
+        filmForUpdate.setId(-1);
+        assertThrows(FilmNotFoundException.class, () -> filmDbStorage.update(filmForUpdate),
+                "Обновление несуществующего фильма должно приводить к ошибке");
+    }
+}
@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmRating;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class WriteBehindFilmStorageTest {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private FilmDbStorage filmDbStorage;
+    private UserDbStorage userDbStorage;
+    @TempDir
+    Path journalDir;
+
+    @BeforeEach
+    private void makeNewFilmStorage() {
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(jdbcTemplate);
+        referenceDataRegistry.refresh();
+        this.filmDbStorage = new FilmDbStorage(jdbcTemplate, referenceDataRegistry, transactionManager);
+        this.userDbStorage = new UserDbStorage(jdbcTemplate, transactionManager);
+    }
+
+    private WriteBehindFilmStorage startStorage() throws IOException {
+        WriteBehindFilmStorage storage = new WriteBehindFilmStorage(filmDbStorage, userDbStorage, true,
+                journalDir.toString(), 0);
+        storage.start();
+        return storage;
+    }
+
+    private Film makeFilm() {
+        return Film.builder()
+                .name("Java")
+                .description("about coffee")
+                .releaseDate(LocalDate.of(2024, 4, 11))
+                .duration(200)
+                .mpa(new FilmRating(1, "G"))
+                .genres(Collections.emptySet())
+                .usersLikes(Collections.emptySet())
+                .build();
+    }
+
+    private Integer addUser(final String login) {
+        jdbcTemplate.update("INSERT INTO users (email, login, birthday) VALUES (?, ?, ?)",
+                login + "@mail.test", login, LocalDate.of(1990, 1, 1));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE login = ?", Integer.class, login);
+    }
+
+    private int countLikesInDb(final Integer filmId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM movie_like WHERE movie_id = ?", Integer.class, filmId);
+    }
+
+    @Test
+    void testGetFilmById_ShouldSeePendingLikes_WhenLikesNotDrainedYet() throws IOException {
+        //given
+        WriteBehindFilmStorage storage = startStorage();
+        Integer userId1 = addUser("journal_user1");
+        Integer userId2 = addUser("journal_user2");
+        Integer filmId = storage.add(makeFilm()).getId();
+        filmDbStorage.addUserLikeToFilm(userId2, filmId);
+        //do
+        boolean isLiked = storage.addUserLikeToFilm(userId1, filmId);
+        boolean isLikedAgain = storage.addUserLikeToFilm(userId1, filmId);
+        boolean isUnliked = storage.removeUserLike(userId2, filmId);
+        //expect
+        assertTrue(isLiked, "Новый лайк должен записываться в журнал");
+        assertFalse(isLikedAgain, "Повторный лайк не должен записываться в журнал");
+        assertTrue(isUnliked, "Удаление лайка из базы данных должно записываться в журнал");
+        assertTrue(storage.isLikeExist(userId1, filmId), "Неперенесенный лайк не виден при проверке лайка");
+        assertEquals(1, countLikesInDb(filmId), "Лайки не должны попасть в базу данных до переноса журнала");
+        assertEquals(Set.of(userId1), storage.getFilmById(filmId).getUsersLikes(),
+                "Неперенесенные лайки не видны при чтении фильма");
+        assertEquals(2, storage.getPendingCount(), "Количество неперенесенных лайков не совпадает");
+    }
+
+    @Test
+    void testAddUserLikeToFilm_ShouldNotJournalLike_WhenUserNotFound() throws IOException {
+        //given
+        WriteBehindFilmStorage storage = startStorage();
+        Integer filmId = storage.add(makeFilm()).getId();
+        //expect
+        assertThrows(UserNotFoundException.class, () -> storage.addUserLikeToFilm(-1, filmId),
+                "Лайк несуществующего пользователя не должен записываться в журнал");
+        assertEquals(0, storage.getPendingCount(), "Лайк несуществующего пользователя попал в наложение");
+        assertTrue(storage.getFilmById(filmId).getUsersLikes().isEmpty(),
+                "Лайк несуществующего пользователя виден при чтении фильма");
+    }
+
+    @Test
+    void testUpdate_ShouldReturnPendingLikes_WhenLikesNotDrainedYet() throws IOException {
+        //given
+        WriteBehindFilmStorage storage = startStorage();
+        Integer userId = addUser("journal_user");
+        Film film = storage.add(makeFilm());
+        storage.addUserLikeToFilm(userId, film.getId());
+        film.setUsersLikes(Set.of(-1));
+        //do
+        Film updatedFilm = storage.update(film);
+        //expect
+        assertEquals(Set.of(userId), updatedFilm.getUsersLikes(),
+                "Обновленный фильм должен возвращаться с лайками из базы данных и наложения");
+    }
+
+    @Test
+    void testFlush_ShouldWriteLastLikeStateToDb_WhenLikeChangedSeveralTimes() throws IOException {
+        //given
+        WriteBehindFilmStorage storage = startStorage();
+        Integer userId1 = addUser("journal_user1");
+        Integer userId2 = addUser("journal_user2");
+        Integer filmId = storage.add(makeFilm()).getId();
+        storage.addUserLikeToFilm(userId1, filmId);
+        storage.removeUserLike(userId1, filmId);
+        storage.addUserLikeToFilm(userId1, filmId);
+        storage.addUserLikeToFilm(userId2, filmId);
+        //do
+        storage.flush();
+        //expect
+        assertEquals(Set.of(userId1, userId2), filmDbStorage.getFilmById(filmId).getUsersLikes(),
+                "Лайки в базе данных не совпадают с журналом");
+        assertEquals(0, storage.getPendingCount(), "После переноса не должно остаться лайков в наложении");
+        try (Stream<Path> segments = Files.list(journalDir)) {
+            assertEquals(1, segments.count(), "Перенесенные сегменты журнала должны удаляться");
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testStart_ShouldReplayJournal_WhenPreviousRunStoppedWithoutDrain() throws Exception {
+        //given
+        WriteBehindFilmStorage crashedStorage = startStorage();
+        Integer filmId = crashedStorage.add(makeFilm()).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] likes = new Future<?>[8];
+            for (int i = 0; i < likes.length; i++) {
+                Integer userId = addUser("replay_user" + i);
+                likes[i] = executor.submit(() -> crashedStorage.addUserLikeToFilm(userId, filmId));
+            }
+            for (Future<?> like : likes) {
+                like.get();
+            }
+            executor.shutdown();
+            Path segment;
+            try (Stream<Path> segments = Files.list(journalDir)) {
+                segment = segments.findFirst().orElseThrow();
+            }
+            Files.write(segment, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+            //do
+            WriteBehindFilmStorage restartedStorage = startStorage();
+            //expect
+            assertEquals(8, countLikesInDb(filmId), "Лайки из журнала не применены к базе данных после перезапуска");
+            assertEquals(0, restartedStorage.getPendingCount(), "После применения журнала не должно остаться лайков");
+            assertFalse(Files.exists(segment), "Примененный сегмент журнала должен удаляться");
+        } finally {
+            // тест идет вне транзакции, чтобы потоки видели пользователей, поэтому данные удаляются вручную
+            executor.shutdownNow();
+            jdbcTemplate.update("DELETE FROM movies WHERE id = ?", filmId);
+            jdbcTemplate.update("DELETE FROM users WHERE login LIKE 'replay_user%'");
+        }
+    }
+
+    @Test
+    void testAddUserLikeToFilm_ShouldWriteToDbDirectly_WhenWriteBehindDisabled() throws IOException {
+        //given
+        WriteBehindFilmStorage storage = new WriteBehindFilmStorage(filmDbStorage, userDbStorage, false,
+                journalDir.toString(), 0);
+        storage.start();
+        Integer userId = addUser("journal_user");
+        Integer filmId = storage.add(makeFilm()).getId();
+        //do
+        storage.addUserLikeToFilm(userId, filmId);
+        //expect
+        assertEquals(1, countLikesInDb(filmId), "В выключенном режиме лайк должен сразу попадать в базу данных");
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertEquals(0, files.count(), "В выключенном режиме журнал не должен создаваться");
+        }
+    }
+}
@@ -7,26 +7,37 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.QueryCounting;
+import ru.yandex.practicum.filmorate.storage.QueryCountingDataSource;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
 @JdbcTest
+@QueryCounting
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 class UserDbStorageTest {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private UserDbStorage userStorage;
 
     @BeforeEach
     private void newUserStorage() {
-        this.userStorage = new UserDbStorage(jdbcTemplate);
+        this.userStorage = new UserDbStorage(jdbcTemplate, transactionManager);
     }
 
     private User makeUserWithoutId() {
@@ -156,4 +167,164 @@ class UserDbStorageTest {
         assertThat(isUserExist)
                 .isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetUsersPage_ShouldReturnUsersAfterGivenIdInIdOrder_WhenUsersExist() {
+        //given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = makeUserWithoutId();
+            user.setEmail("user" + i + "@mail.test");
+            user.setLogin("user" + i);
+            userIds.add(userStorage.addUser(user).getId());
+        }
+        //do
+        List<User> middlePage = userStorage.getUsersPage(userIds.get(1), 2);
+        //expect
+        assertEquals(userIds.subList(2, 4), middlePage.stream().map(User::getId).collect(Collectors.toList()),
+                "Страница пользователей не совпадает");
+        assertTrue(userStorage.getUsersPage(userIds.get(4), 2).isEmpty(), "После последнего ID страница не пустая");
+    }
+
+    @Test
+    void testGetUsersByIds_ShouldReturnUsersInGivenOrderWithFriends_WhenUsersHaveFriends() throws Exception {
+        //given
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            User user = makeUserWithoutId();
+            user.setEmail("user" + i + "@mail.test");
+            user.setLogin("user" + i);
+            userIds.add(userStorage.addUser(user).getId());
+        }
+        String sql = "INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, ?)";
+        jdbcTemplate.update(sql, userIds.get(0), userIds.get(2), true);
+        jdbcTemplate.update(sql, userIds.get(0), userIds.get(3), true);
+        jdbcTemplate.update(sql, userIds.get(0), userIds.get(4), false);
+        jdbcTemplate.update(sql, userIds.get(0), userIds.get(5), true);
+        jdbcTemplate.update(sql, userIds.get(1), userIds.get(3), true);
+        jdbcTemplate.update(sql, userIds.get(1), userIds.get(4), true);
+        jdbcTemplate.update(sql, userIds.get(1), userIds.get(5), true);
+        jdbcTemplate.update(sql, userIds.get(5), userIds.get(0), false);
+        //do
+        List<User> users = QueryCountingDataSource.of(jdbcTemplate.getDataSource())
+                .withinBudget(2, () -> userStorage.getUsersByIds(List.of(userIds.get(5), userIds.get(0))));
+        //expect
+        assertEquals(List.of(userIds.get(5), userIds.get(0)),
+                users.stream().map(User::getId).collect(Collectors.toList()),
+                "Порядок пользователей не совпадает с порядком ID");
+        assertEquals(Set.of(userIds.get(0)), users.get(0).getFriendsRequests(),
+                "Заявки в друзья пользователя не загружены");
+        assertEquals(Set.of(userIds.get(2), userIds.get(3), userIds.get(5)), users.get(1).getFriends(),
+                "Друзья пользователя не загружены");
+    }
+
+    @Test
+    void testHotQueries_ShouldUseIndexLookups_WhenFriendsTableHasKeys() {
+        //given
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        List<String> hotQueries = List.of(
+                UserDbStorage.CONFIRM_FRIENDSHIP,
+                UserDbStorage.INSERT_FRIEND_REQUEST,
+                UserDbStorage.ACCEPT_FRIEND_REQUEST,
+                UserDbStorage.DELETE_FRIENDSHIP,
+                UserAssembler.SELECT_USERS + UserDbStorage.idsCondition(2));
+        //expect
+        for (String sql : hotQueries) {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class,
+                    Collections.nCopies(sql.split("\\?", -1).length - 1, 1).toArray());
+            assertFalse(plan.contains("tableScan"), "Запрос выполняется полным сканированием таблицы: " + plan);
+        }
+        String plan = namedJdbcTemplate.queryForObject("EXPLAIN " + UserAssembler.SELECT_FRIENDS_BY_USER_IDS,
+                Map.of("ids", List.of(1, 2)), String.class);
+        assertFalse(plan.contains("tableScan"), "Запрос выполняется полным сканированием таблицы: " + plan);
+    }
+
+    @Test
+    void testAddUsers_ShouldSaveUsersAndReturnIdsInOrder_WhenUsersAddedInBatch() {
+        //given
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            User user = makeUserWithoutId();
+            user.setLogin("batch_login" + i);
+            user.setEmail("batch" + i + "@bar.com");
+            users.add(user);
+        }
+        //do
+        List<Integer> userIds = userStorage.addUsers(users);
+        //expect
+        assertEquals(1500, userIds.size(), "Количество ID не совпадает с количеством пользователей");
+        assertEquals("batch_login0", userStorage.getUserById(userIds.get(0)).getLogin(),
+                "ID не соответствует пользователю");
+        assertEquals("batch_login1499", userStorage.getUserById(userIds.get(1499)).getLogin(),
+                "ID не соответствует пользователю");
+        assertEquals(userIds, users.stream().map(User::getId).collect(Collectors.toList()),
+                "ID пользователей не проставлены");
+    }
+
+    @Test
+    void testUpdateUser_ShouldKeepFriendships_WhenUserUpdatedWithOtherFriendSets() {
+        //given
+        List<Integer> otherIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User other = makeUserWithoutId();
+            other.setEmail("other" + i + "@mail.test");
+            other.setLogin("other" + i);
+            otherIds.add(userStorage.addUser(other).getId());
+        }
+        User user = makeUserWithoutId();
+        Integer userId = userStorage.addUser(user).getId();
+        userStorage.requestFriendship(userId, otherIds.get(0));
+        userStorage.acceptFriendship(otherIds.get(0), userId);
+        userStorage.requestFriendship(otherIds.get(1), userId);
+        //do
+        user.setName("Other friends");
+        user.setFriends(new HashSet<>(Set.of(otherIds.get(2))));
+        user.setFriendsRequests(new HashSet<>());
+        User updatedUser = userStorage.updateUser(user);
+        //expect
+        assertSame(user, updatedUser, "Пользователь не должен перечитываться после обновления");
+        User savedUser = userStorage.getUserById(userId);
+        assertEquals("Other friends", savedUser.getName(), "Имя пользователя не обновлено");
+        assertEquals(Set.of(otherIds.get(0)), savedUser.getFriends(), "Обновление профиля изменило друзей");
+        assertEquals(Set.of(otherIds.get(1)), savedUser.getFriendsRequests(),
+                "Обновление профиля изменило заявки в друзья");
+        user.setId(-1);
+        assertThrows(UserNotFoundException.class, () -> userStorage.updateUser(user),
+                "Обновление несуществующего пользователя должно приводить к ошибке");
+    }
+
+    @Test
+    void testFriendshipEdges_ShouldTouchOnlyAffectedRows_WhenFriendshipRequestedAcceptedAndRemoved() {
+        //given
+        User user = makeUserWithoutId();
+        User friend = makeUserWithoutId();
+        friend.setEmail("friend@mail.test");
+        friend.setLogin("friend");
+        Integer userId = userStorage.addUser(user).getId();
+        Integer friendId = userStorage.addUser(friend).getId();
+        //do
+        boolean isRequested = userStorage.requestFriendship(userId, friendId);
+        boolean isRequestedAgain = userStorage.requestFriendship(userId, friendId);
+        User requestedFriend = userStorage.getUserById(friendId);
+        boolean isAccepted = userStorage.acceptFriendship(friendId, userId);
+        boolean isAcceptedAgain = userStorage.acceptFriendship(friendId, userId);
+        User acceptedFriend = userStorage.getUserById(friendId);
+        boolean isRemoved = userStorage.removeFriendship(userId, friendId);
+        boolean isRemovedAgain = userStorage.removeFriendship(userId, friendId);
+        //expect
+        assertTrue(isRequested, "Заявка другу должна создаваться");
+        assertFalse(isRequestedAgain, "Повторная заявка не должна создаваться");
+        assertEquals(Set.of(userId), requestedFriend.getFriendsRequests(), "Заявка в друзья не совпадает");
+        assertTrue(isAccepted, "Заявка должна приниматься");
+        assertFalse(isAcceptedAgain, "Принятая заявка не должна приниматься повторно");
+        assertEquals(Set.of(userId), acceptedFriend.getFriends(), "Друзья после принятия заявки не совпадают");
+        assertTrue(acceptedFriend.getFriendsRequests().isEmpty(), "Принятая заявка осталась в заявках");
+        assertTrue(isRemoved, "Связь должна удаляться");
+        assertFalse(isRemovedAgain, "Повторное удаление связи не должно ничего менять");
+        assertTrue(userStorage.getUserById(userId).getFriends().isEmpty(), "Удаленный друг остался в друзьях");
+        assertEquals(Set.of(userId), userStorage.getUserById(friendId).getFriends(),
+                "Удаление связи не должно менять связь в обратную сторону");
+        assertThrows(UserNotFoundException.class, () -> userStorage.requestFriendship(userId, -1),
+                "Заявка несуществующему пользователю должна приводить к ошибке");
+    }
+}